@@ -1,14 +1,20 @@
 package EnvironmentInterface;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import eis.EIDefaultImpl;
 import eis.PerceptUpdate;
@@ -20,11 +26,17 @@ import eis.exceptions.PerceiveException;
 import eis.exceptions.RelationException;
 import eis.iilang.Action;
 import eis.iilang.EnvironmentState;
+import eis.iilang.Function;
 import eis.iilang.Identifier;
 import eis.iilang.Numeral;
 import eis.iilang.Parameter;
+import eis.iilang.ParameterList;
 import eis.iilang.Percept;
+import wumpusenv.Simulator;
+import wumpusenv.TheGame;
+import wumpusenv.WorldCache;
 import wumpusenv.WumpusApp;
+import wumpusenv.WumpusObserver;
 import wumpusenv.WumpusWorld;
 import wumpusenv.WumpusWorldPercept;
 
@@ -37,21 +49,52 @@ import wumpusenv.WumpusWorldPercept;
  * Interface is said to be connected to Wumpus world if a Wumpus game is
  * running. Wumpus world need to be launched again if no WumpusApp is available.
  * </p>
+ * <p>
+ * With {@code gui=false} no WumpusApp is made at all: the game is a
+ * {@link Simulator} that does not load any AWT class, so the environment also
+ * runs on machines without a display.
+ * </p>
+ * <p>
+ * With {@code autoreset=true} a finished game is reset at once and the entity
+ * stays registered, so an agent can play game after game. After the action
+ * that finished a game, the entity perceives {@code terminal(Score)} with the
+ * final score of that game, together with the percepts of the start of the
+ * next game.
+ * </p>
+ * <p>
+ * With {@code checkpoint=File} the game is saved to that file, next to the map,
+ * when the environment is killed; if the game has finished, the file is
+ * deleted instead. If the file exists when the environment is initialised,
+ * the game resumes from it when the environment is started, so a game can go
+ * on after a restart of the JVM. The {@code autoreset} parameter of this run
+ * counts, not the one of the run that saved the checkpoint. See also
+ * {@link #saveCheckpoint(File)} and {@link #restoreCheckpoint(File)}.
+ * </p>
  *
  * @author KH
  */
-public class WumpusEnvironment extends EIDefaultImpl {
+public class WumpusEnvironment extends EIDefaultImpl implements WumpusObserver {
 	private static final long serialVersionUID = 773327222037240183L;
 
 	private WumpusWorld world;
+	/**
+	 * The game when the GUI is off, null when the game runs in the WumpusApp.
+	 */
+	private Simulator simulator;
 	/**
 	 * Single CONTROLLABLE entity living in the Wumpus world.
 	 */
 	private static final String ENTITY = "caveExplorer";
 	private boolean entityRegistered = false;
+	/**
+	 * The file the game is saved to when killed, or null; and the checkpoint to
+	 * resume from when started, or null.
+	 */
+	private File checkpointFile = null;
+	private ByteBuffer pendingCheckpoint = null;
 
 	enum InitKey {
-		FILE, GUI, UNKNOWN;
+		FILE, GUI, AUTORESET, CHECKPOINT, UNKNOWN;
 
 		static InitKey toKey(final String key) {
 			try {
@@ -63,13 +106,29 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	}
 
 	enum WumpusAction {
-		FORWARD, GRAB, SHOOT, CLIMB, TURN, UNKNOWN;
+		FORWARD, GRAB, SHOOT, CLIMB, TURN, PLAN, UNKNOWN;
 
 		static WumpusAction toKey(final String act) {
-			try {
-				return valueOf(act.toUpperCase());
-			} catch (final Exception ex) {
-				return UNKNOWN;
+			// the usual lower case names without building a new string
+			switch (act) {
+			case "forward":
+				return FORWARD;
+			case "grab":
+				return GRAB;
+			case "shoot":
+				return SHOOT;
+			case "climb":
+				return CLIMB;
+			case "turn":
+				return TURN;
+			case "plan":
+				return PLAN;
+			default:
+				try {
+					return valueOf(act.toUpperCase());
+				} catch (final Exception ex) {
+					return UNKNOWN;
+				}
 			}
 		}
 	}
@@ -102,14 +161,185 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	/**
 	 * Each call to executeAction will increment the current time.
 	 *
+	 * @param pAct action number of {@link TheGame}.
 	 * @throws NoEnvironmentException
 	 */
-	private void executeAction(final String pAgent, final String pAct) throws NoEnvironmentException {
-		if (getApplication().getRunner().gameRunning()) {
-			getApplication().getRunner().nextStep(pAct);
+	private void executeAction(final String pAgent, final int pAct) throws NoEnvironmentException {
+		if (!getSimulator().gameRunning()) {
+			throw new NoEnvironmentException("Game is not running");
+		}
+		this.planTrace = null;
+		if (this.simulator != null) {
+			this.simulator.nextStep(pAct);
 		} else {
+			// the runner steps its simulator and updates the GUI
+			getApplication().getRunner().nextStep(pAct);
+		}
+		updateTerminal();
+	}
+
+	/**
+	 * Sets the terminal percept if the last step ended a game (auto reset only).
+	 */
+	private void updateTerminal() throws NoEnvironmentException {
+		final Simulator simulator = getSimulator();
+		this.terminal = simulator.episodeEnded() ? new Percept("terminal", new Numeral(simulator.getGameScore()))
+				: null;
+	}
+
+	/**
+	 * Executes a plan action {@code plan([Action, ...])} or
+	 * {@code plan([Action, ...], [Percept, ...])}, e.g.
+	 * {@code plan([turn(left), forward, forward, grab], [bump, glitter])}. The
+	 * actions are done in one go; the plan stops early when the agent dies or
+	 * climbs out, or after a step that perceives one of the given percepts. Until
+	 * the next action the entity then perceives
+	 * {@code planTrace([Percept1, ...], [Reward1, ...])}, with per step done the
+	 * percept as a mask (breeze 1, stench 2, bump 4, scream 8, glitter 16, 0
+	 * when the game finished) and the reward.
+	 *
+	 * @throws ActException if the plan is malformed.
+	 */
+	private void executePlan(final String pAgent, final List<Parameter> parameters)
+			throws ActException, NoEnvironmentException {
+		if (parameters.isEmpty() || parameters.size() > 2 || !(parameters.get(0) instanceof ParameterList)) {
+			throw new ActException(ActException.FAILURE,
+					"plan requires a list of actions and optionally a list of percepts, but received " + parameters);
+		}
+		final ParameterList steps = (ParameterList) parameters.get(0);
+		final int[] actions = new int[steps.size()];
+		for (int i = 0; i < actions.length; i++) {
+			final Parameter step = steps.get(i);
+			if (step instanceof Identifier) {
+				actions[i] = toActionNumber(((Identifier) step).getValue(), Collections.emptyList());
+			} else if (step instanceof Function) {
+				actions[i] = toActionNumber(((Function) step).getName(), ((Function) step).getParameters());
+			} else {
+				throw new ActException(ActException.FAILURE, "plan takes actions but received " + step);
+			}
+		}
+		int stopOn = 0;
+		if (parameters.size() == 2) {
+			if (!(parameters.get(1) instanceof ParameterList)) {
+				throw new ActException(ActException.FAILURE,
+						"plan takes a list of percepts to stop on but received " + parameters.get(1));
+			}
+			for (final Parameter percept : (ParameterList) parameters.get(1)) {
+				if (!(percept instanceof Identifier)) {
+					throw new ActException(ActException.FAILURE, "plan takes percepts but received " + percept);
+				}
+				stopOn |= toPerceptMask(((Identifier) percept).getValue());
+			}
+		}
+
+		if (!getSimulator().gameRunning()) {
 			throw new NoEnvironmentException("Game is not running");
 		}
+		final int[] percepts = new int[actions.length];
+		final int[] rewards = new int[actions.length];
+		final int n;
+		if (this.simulator != null) {
+			n = this.simulator.nextSteps(actions, stopOn, percepts, rewards);
+		} else {
+			// the runner steps its simulator and updates the GUI
+			n = getApplication().getRunner().nextSteps(actions, stopOn, percepts, rewards);
+		}
+		final List<Parameter> perceptTrace = new ArrayList<>(n);
+		final List<Parameter> rewardTrace = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			perceptTrace.add(new Numeral(percepts[i]));
+			rewardTrace.add(new Numeral(rewards[i]));
+		}
+		this.planTrace = new Percept("planTrace", new ParameterList(perceptTrace), new ParameterList(rewardTrace));
+		updateTerminal();
+	}
+
+	/**
+	 * Returns the game: the headless simulator, or the one of the runner of the
+	 * Wumpus application.
+	 *
+	 * @return the simulation kernel.
+	 * @throws NoEnvironmentException if there is no game.
+	 */
+	private Simulator getSimulator() throws NoEnvironmentException {
+		if (this.simulator != null) {
+			return this.simulator;
+		}
+		if (this.world == null || getApplication() == null) {
+			throw new NoEnvironmentException("environment is not available");
+		}
+		return getApplication().getRunner().getSimulator();
+	}
+
+	/**
+	 * Loads a map into the game. Maps are cached, see {@link WorldCache}.
+	 */
+	private void loadMap(final File mapfile) {
+		if (this.simulator == null) {
+			this.world.getApplication().getEditor().loadFrom(mapfile);
+			return;
+		}
+		try {
+			this.simulator.setModel(WorldCache.getShared().load(mapfile, this.simulator.getModel().getStorage()));
+		} catch (final Exception ex) {
+			System.out.println(ex.toString());
+		}
+	}
+
+	/**
+	 * Saves the state of the game to a file, see {@link Simulator#checkpoint()}.
+	 *
+	 * @param file the file to write. Overwritten if it exists.
+	 * @throws IOException            if the file cannot be written.
+	 * @throws NoEnvironmentException if there is no game.
+	 */
+	public void saveCheckpoint(final File file) throws IOException, NoEnvironmentException {
+		final ByteBuffer checkpoint = getSimulator().checkpoint();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (checkpoint.hasRemaining()) {
+				channel.write(checkpoint);
+			}
+		}
+	}
+
+	/**
+	 * Puts the game back into the state saved with {@link #saveCheckpoint(File)}.
+	 *
+	 * @param file the file to read.
+	 * @throws IOException            if the file cannot be read or is not a
+	 *                                checkpoint.
+	 * @throws NoEnvironmentException if there is no game.
+	 */
+	public void restoreCheckpoint(final File file) throws IOException, NoEnvironmentException {
+		restore(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+	}
+
+	private void restore(final ByteBuffer checkpoint) throws IOException, NoEnvironmentException {
+		if (this.simulator != null) {
+			this.simulator.restore(checkpoint);
+		} else {
+			getSimulator(); // fails if there is no game
+			getApplication().getRunner().restore(checkpoint);
+		}
+		this.planTrace = null;
+		this.terminal = null;
+	}
+
+	/**
+	 * Resumes from the checkpoint read at initialisation, if any. Once only.
+	 */
+	private void restorePendingCheckpoint() throws ManagementException {
+		if (this.pendingCheckpoint == null) {
+			return;
+		}
+		try {
+			restore(this.pendingCheckpoint);
+		} catch (final IOException | NoEnvironmentException e) {
+			throw new ManagementException("cannot resume from " + this.checkpointFile + ": " + e.getMessage());
+		} finally {
+			this.pendingCheckpoint = null;
+		}
 	}
 
 	/**
@@ -139,6 +369,7 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	/**
 	 * Unregister entity with EIS.
 	 */
+	@Override
 	public void unregisterEntity() {
 		try {
 			deleteEntity(ENTITY);
@@ -155,6 +386,7 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	 *
 	 * @param state environment event. see EIDefaultImpl. TODO Link @see not working
 	 */
+	@Override
 	public void notifyStateChange(final EnvironmentState state) {
 		if (state != getState()) {
 			try {
@@ -178,71 +410,140 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	/********** Implements EnvironmentInterface *******************/
 	/**************************************************************/
 
-	private List<Percept> previousPercepts = new ArrayList<>(0);
+	/**
+	 * The percepts of the bits of a percept mask, lowest bit first. A percept is
+	 * the same object every time it is sent, per environment.
+	 */
+	private final Percept[] maskPercepts = { new Percept("breeze"), new Percept("stench"), new Percept("bump"),
+			new Percept("scream"), new Percept("glitter") };
+	/**
+	 * The percepts sent last time: a percept mask, the time and its percept
+	 * (null before the first time), and a plan trace (may be null).
+	 */
+	private int previousMask = 0;
+	private int previousTime = 0;
+	private Percept previousTimePercept = null;
+	private Percept previousPlanTrace = null;
+	private Percept previousTerminal = null;
+	/**
+	 * Trace of the last plan action, null if the last action was not a plan.
+	 */
+	private Percept planTrace = null;
+	/**
+	 * Final score of the game that the last action ended, null if it did not end
+	 * one. Only with auto reset.
+	 */
+	private Percept terminal = null;
 
 	@Override
 	protected PerceptUpdate getPerceptsForEntity(final String entity) throws PerceiveException, NoEnvironmentException {
-		final WumpusWorldPercept wumpusWorldPercept = getApplication().getRunner().getCurrentPercept();
+		final Simulator simulator = getSimulator();
+		final WumpusWorldPercept wumpusWorldPercept = simulator.getCurrentPercept();
 		if (wumpusWorldPercept == null) {
 			throw new NoEnvironmentException("environment is not available");
 		}
 
-		// EIS percepts.
-		final List<Percept> percepts = new LinkedList<>();
+		final List<Percept> addList = new ArrayList<>(4);
+		final List<Percept> delList = new ArrayList<>(4);
 
-		// construct the EIS percepts from the Wumpus World percept
-		if (wumpusWorldPercept.getBreeze()) {
-			percepts.add(new Percept("breeze"));
-		}
-		if (wumpusWorldPercept.getStench()) {
-			percepts.add(new Percept("stench"));
-		}
-		if (wumpusWorldPercept.getBump()) {
-			percepts.add(new Percept("bump"));
-		}
-		if (wumpusWorldPercept.getScream()) {
-			percepts.add(new Percept("scream"));
+		// the percepts that changed since last time, from the percept masks
+		final int mask = wumpusWorldPercept.getMask();
+		final int changed = mask ^ this.previousMask;
+		for (int bits = changed; bits != 0; bits &= bits - 1) {
+			final int bit = Integer.numberOfTrailingZeros(bits);
+			((mask & (1 << bit)) != 0 ? addList : delList).add(this.maskPercepts[bit]);
 		}
-		if (wumpusWorldPercept.getGlitter()) {
-			percepts.add(new Percept("glitter"));
+		this.previousMask = mask;
+
+		final int time = simulator.getTime();
+		if (this.previousTimePercept == null || this.previousTime != time) {
+			if (this.previousTimePercept != null) {
+				delList.add(this.previousTimePercept);
+			}
+			this.previousTime = time;
+			this.previousTimePercept = new Percept("time", new Numeral(time));
+			addList.add(this.previousTimePercept);
 		}
-		percepts.add(new Percept("time", new Numeral(getApplication().getRunner().getTime())));
 
-		final List<Percept> addList = new ArrayList<>(percepts);
-		addList.removeAll(this.previousPercepts);
-		final List<Percept> delList = new ArrayList<>(this.previousPercepts);
-		delList.removeAll(percepts);
+		addChange(this.previousPlanTrace, this.planTrace, addList, delList);
+		this.previousPlanTrace = this.planTrace;
+		addChange(this.previousTerminal, this.terminal, addList, delList);
+		this.previousTerminal = this.terminal;
 
-		this.previousPercepts = percepts;
 		return new PerceptUpdate(addList, delList);
 	}
 
+	/**
+	 * Adds a percept that may have changed to the add and delete lists.
+	 *
+	 * @param before the percept sent last time, may be null.
+	 * @param now    the percept now, may be null.
+	 */
+	private static void addChange(final Percept before, final Percept now, final List<Percept> addList,
+			final List<Percept> delList) {
+		if (!Objects.equals(before, now)) {
+			if (before != null) {
+				delList.add(before);
+			}
+			if (now != null) {
+				addList.add(now);
+			}
+		}
+	}
+
 	@Override
 	public void kill() throws ManagementException {
+		// Save the game, so that it can be resumed. A finished game cannot be
+		// resumed, so then an old checkpoint is removed instead.
+		if (this.checkpointFile != null && (this.simulator != null || this.world != null)) {
+			try {
+				if (getSimulator().getModel().gameFinished()) {
+					Files.deleteIfExists(this.checkpointFile.toPath());
+				} else {
+					saveCheckpoint(this.checkpointFile);
+				}
+			} catch (final IOException | NoEnvironmentException e) {
+				System.out.println("Warning: wumpus environment can't save checkpoint " + this.checkpointFile + ": " + e);
+			}
+		}
+
 		// If entity is still registered, unregister entity.
 		if (this.entityRegistered) {
 			unregisterEntity();
 		}
 
 		// Close GUI.
-		if (getApplication() != null) { // Wumpus application not yet killed.
+		if (this.world != null && getApplication() != null) { // Wumpus application not yet killed.
 			this.world.close();
+		} else if (this.simulator != null) {
+			notifyStateChange(EnvironmentState.KILLED);
 		}
 
 		// Clean up.
 		System.out.println("Handing wumpus world to garbage collector");
 		this.world = null;
+		this.simulator = null;
 	}
 
 	@Override
 	public void pause() throws ManagementException {
-		getApplication().getRunner().setPaused(true);
+		try {
+			getSimulator().setPaused(true);
+		} catch (final NoEnvironmentException e) {
+			throw new ManagementException(e.getMessage());
+		}
 	}
 
 	@Override
 	public void start() throws ManagementException {
+		if (this.simulator != null) {
+			restorePendingCheckpoint();
+			notifyStateChange(EnvironmentState.RUNNING);
+			return;
+		}
 		if (!getApplication().isGuiVisible()) {
 			getApplication().getRunner().setRealModel(getApplication().getEditor().getModel());
+			restorePendingCheckpoint();
 			notifyStateChange(EnvironmentState.RUNNING);
 			return;
 		}
@@ -251,6 +552,7 @@ public class WumpusEnvironment extends EIDefaultImpl {
 		} else {
 			notifyStateChange(EnvironmentState.RUNNING);
 		}
+		restorePendingCheckpoint();
 	}
 
 	@Override
@@ -263,14 +565,16 @@ public class WumpusEnvironment extends EIDefaultImpl {
 	public void reset(final Map<String, Parameter> parameters) throws ManagementException {
 		parseParameters(parameters);
 		setState(EnvironmentState.PAUSED);
-		// notify EIS interface, if present, that entity has been created
-		WumpusWorld.getInstance().registerEntity();
+		// notify EIS interface that entity has been created
+		registerEntity();
 	}
 
 	private void parseParameters(final Map<String, Parameter> parameters) throws ManagementException {
 		// GUI is enabled by default
 		boolean guimode = true;
+		boolean autoreset = false;
 		String filename = null;
+		String checkpointName = null;
 
 		for (final String key : parameters.keySet()) {
 			final Parameter p = parameters.get(key);
@@ -290,16 +594,43 @@ public class WumpusEnvironment extends EIDefaultImpl {
 							"Boolean 'true' or 'false' expected as value for key" + "'gui' but got " + p);
 				}
 				break;
+			case AUTORESET:
+				if (p instanceof Identifier) {
+					autoreset = Boolean.parseBoolean(((Identifier) p).getValue());
+				} else {
+					throw new ManagementException(
+							"Boolean 'true' or 'false' expected as value for key 'autoreset' but got " + p);
+				}
+				break;
+			case CHECKPOINT:
+				if (!(p instanceof Identifier)) {
+					throw new ManagementException(
+							"String expected as value for key " + InitKey.CHECKPOINT + " but got " + p);
+				}
+				checkpointName = ((Identifier) p).getValue();
+				break;
 			default:
 				throw new ManagementException("Init key " + key + " unknown.");
 			}
 		}
 
-		this.world = WumpusWorld.getInstance();
-		// do not change order!
-		this.world.setInterface(this);
-		// set up needs the interface to register entity
-		this.world.setUp(guimode);
+		if (guimode) {
+			this.simulator = null;
+			this.world = new WumpusWorld();
+			// do not change order!
+			this.world.setInterface(this);
+			// set up needs the interface to register entity
+			this.world.setUp(guimode);
+		} else {
+			// headless: do not touch WumpusWorld, it is an AWT component
+			this.world = null;
+			this.simulator = new Simulator(this);
+		}
+		try {
+			getSimulator().setAutoReset(autoreset);
+		} catch (final NoEnvironmentException e) {
+			throw new ManagementException(e.getMessage());
+		}
 
 		final URL url = getClass().getProtectionDomain().getCodeSource().getLocation();
 		try {
@@ -308,11 +639,21 @@ public class WumpusEnvironment extends EIDefaultImpl {
 			if (!mapfile.exists()) {
 				System.out.println("Warning: wumpus environment can't open map " + mapfile);
 			} else {
-				this.world.getApplication().getEditor().loadFrom(mapfile);
+				loadMap(mapfile);
 			}
+			this.checkpointFile = (checkpointName == null) ? null
+					: p.getParent().resolve(checkpointName).toFile();
 		} catch (final URISyntaxException e) {
 			throw new ManagementException("failed to get path to " + url);
 		}
+		this.pendingCheckpoint = null;
+		if (this.checkpointFile != null && this.checkpointFile.exists()) {
+			try {
+				this.pendingCheckpoint = ByteBuffer.wrap(Files.readAllBytes(this.checkpointFile.toPath()));
+			} catch (final IOException e) {
+				throw new ManagementException("cannot read checkpoint " + this.checkpointFile + ": " + e.getMessage());
+			}
+		}
 	}
 
 	/**
@@ -348,44 +689,77 @@ public class WumpusEnvironment extends EIDefaultImpl {
 			throw new ActException("environment is not running");
 		}
 		try {
-			switch (WumpusAction.toKey(action.getName())) {
-			case CLIMB:
-				executeAction(entity, "climb");
-				break;
-			case FORWARD:
-				executeAction(entity, "forward");
-				break;
-			case GRAB:
-				executeAction(entity, "grab");
-				break;
-			case SHOOT:
-				executeAction(entity, "shoot");
-				break;
-			case TURN:
-				if (action.getParameters().size() != 1) {
-					throw new ActException(ActException.FAILURE,
-							"turn requires exactly 1 parameter, but received " + action.getParameters());
-				}
-				final Parameter param0 = action.getParameters().get(0);
-				if (!(param0 instanceof Identifier)) {
-					throw new ActException(ActException.FAILURE,
-							"turn takes Identifier as parameter but received " + param0);
-				}
-				final String direction = ((Identifier) param0).getValue();
-				if (direction.equals("left")) {
-					executeAction(entity, "turn(left)");
-				} else if (direction.equals("right")) {
-					executeAction(entity, "turn(right)");
-				} else {
-					throw new ActException(ActException.FAILURE,
-							"turn takes only 'left' and 'right' as parameter, but received " + direction);
-				}
-				break;
-			default: // UNKNOWN
-				throw new ActException(ActException.FAILURE, "unknown action: " + action);
+			if (WumpusAction.toKey(action.getName()) == WumpusAction.PLAN) {
+				executePlan(entity, action.getParameters());
+			} else {
+				executeAction(entity, toActionNumber(action.getName(), action.getParameters()));
 			}
 		} catch (final NoEnvironmentException e) {
 			throw new ActException(ActException.FAILURE, "Environment is not available");
 		}
 	}
+
+	/**
+	 * Resolves an action into an action number of {@link TheGame}.
+	 *
+	 * @param name       name of the action, e.g. "turn".
+	 * @param parameters parameters of the action, e.g. [left].
+	 * @throws ActException if this is not a single action of the agent.
+	 */
+	private static int toActionNumber(final String name, final List<Parameter> parameters) throws ActException {
+		switch (WumpusAction.toKey(name)) {
+		case CLIMB:
+			return TheGame.CLIMB;
+		case FORWARD:
+			return TheGame.FORWARD;
+		case GRAB:
+			return TheGame.GRAB;
+		case SHOOT:
+			return TheGame.SHOOT;
+		case TURN:
+			if (parameters.size() != 1) {
+				throw new ActException(ActException.FAILURE,
+						"turn requires exactly 1 parameter, but received " + parameters);
+			}
+			final Parameter param0 = parameters.get(0);
+			if (!(param0 instanceof Identifier)) {
+				throw new ActException(ActException.FAILURE,
+						"turn takes Identifier as parameter but received " + param0);
+			}
+			final String direction = ((Identifier) param0).getValue();
+			if (direction.equals("left")) {
+				return TheGame.TURN_LEFT;
+			} else if (direction.equals("right")) {
+				return TheGame.TURN_RIGHT;
+			} else {
+				throw new ActException(ActException.FAILURE,
+						"turn takes only 'left' and 'right' as parameter, but received " + direction);
+			}
+		default: // PLAN, UNKNOWN
+			throw new ActException(ActException.FAILURE, "unknown action: " + name + parameters);
+		}
+	}
+
+	/**
+	 * Resolves the name of a percept into its bit in a percept mask.
+	 *
+	 * @throws ActException if name is not breeze, stench, bump, scream or
+	 *                      glitter.
+	 */
+	private static int toPerceptMask(final String name) throws ActException {
+		switch (name) {
+		case "breeze":
+			return WumpusWorldPercept.BREEZE;
+		case "stench":
+			return WumpusWorldPercept.STENCH;
+		case "bump":
+			return WumpusWorldPercept.BUMP;
+		case "scream":
+			return WumpusWorldPercept.SCREAM;
+		case "glitter":
+			return WumpusWorldPercept.GLITTER;
+		default:
+			throw new ActException(ActException.FAILURE, "unknown percept to stop a plan on: " + name);
+		}
+	}
 }
@@ -0,0 +1,388 @@
+package wumpusenv;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * BatchSimulator plays many independent Wumpus episodes in lockstep, for
+ * example to train a learning agent. The state of the episodes is kept in
+ * primitive arrays, one entry per episode (agent x, y and orientation, arrow,
+ * gold, wumpus alive, score, ...), and {@link #step(int[], int[], int[])} does
+ * one action in every episode in a single call, without allocating.
+ * <p>
+ * The squares of the worlds are not copied per episode. Each distinct world is
+ * compiled once into a flat int array that also holds, per square, whether an
+ * arrow shot from there in each direction hits a wumpus. What an episode
+ * changes in its world (the gold it took, the wumpus it killed) is kept in the
+ * episode's own entries. Episodes can share one world or each have their own.
+ * </p>
+ * <p>
+ * The rules are those of {@link TheGame#Action(int, WorldModel)}. Actions are
+ * the action numbers of {@link TheGame}; percepts are the masks of
+ * {@link WumpusWorldPercept}, such as {@link WumpusWorldPercept#BREEZE}.
+ * </p>
+ */
+public final class BatchSimulator {
+	/**
+	 * Bits of a compiled square. The percept bits are those of
+	 * WumpusWorldPercept, so they can be returned as they are.
+	 */
+	private static final int C_BREEZE = WumpusWorldPercept.BREEZE;
+	private static final int C_STENCH = WumpusWorldPercept.STENCH;
+	private static final int C_GOLD = WumpusWorldPercept.GLITTER;
+	private static final int C_WALL = 0x100;
+	private static final int C_PIT = 0x200;
+	private static final int C_WUMPUS = 0x400;
+	/**
+	 * Bit C_ARROW << d is set if an arrow shot in direction d hits a wumpus.
+	 */
+	private static final int C_ARROW = 0x800;
+	/**
+	 * Gold squares are numbered per world; the number is kept in the high bits.
+	 */
+	private static final int GOLD_SHIFT = 16;
+	private static final int MAX_GOLD = 64;
+
+	/**
+	 * Directions 0..3 are the orientations 0, 90, 180 and 270.
+	 */
+	private static final int[] DX = { 1, 0, -1, 0 };
+	private static final int[] DY = { 0, 1, 0, -1 };
+
+	// the compiled worlds
+	private final WorldModel[] worlds;
+	private final int[] cells;
+	private final int[] base, originX, originY, width, height, startX, startY;
+
+	// the episodes
+	private final int size;
+	private final int[] world;
+	private final int[] agentX, agentY, direction, score;
+	private final long[] goldTaken;
+	private final boolean[] hasArrow, hasGold, wumpusAlive, finished;
+
+	/**
+	 * Creates episodes that all play on the same world.
+	 *
+	 * @param world    the world; it is compiled as it is now.
+	 * @param episodes number of episodes.
+	 */
+	public BatchSimulator(final WorldModel world, final int episodes) {
+		this(repeat(world, episodes));
+	}
+
+	/**
+	 * Creates one episode per world. Worlds that occur more than once in the
+	 * array are compiled once and shared.
+	 *
+	 * @param worlds the world of each episode; compiled as they are now.
+	 * @throws IllegalArgumentException if a world has more than 64 gold squares.
+	 */
+	public BatchSimulator(final WorldModel[] worlds) {
+		this.size = worlds.length;
+		this.world = new int[this.size];
+		final Map<WorldModel, Integer> index = new IdentityHashMap<>();
+		for (int e = 0; e < this.size; e++) {
+			final Integer i = index.get(worlds[e]);
+			if (i == null) {
+				this.world[e] = index.size();
+				index.put(worlds[e], this.world[e]);
+			} else {
+				this.world[e] = i;
+			}
+		}
+
+		final int n = index.size();
+		this.worlds = new WorldModel[n];
+		this.base = new int[n];
+		this.originX = new int[n];
+		this.originY = new int[n];
+		this.width = new int[n];
+		this.height = new int[n];
+		this.startX = new int[n];
+		this.startY = new int[n];
+		final int[][] compiled = new int[n][];
+		int total = 0;
+		for (final Map.Entry<WorldModel, Integer> entry : index.entrySet()) {
+			final int w = entry.getValue();
+			// a fork, so later edits of the caller's world do not matter
+			this.worlds[w] = entry.getKey().fork();
+			compiled[w] = compile(w);
+			this.base[w] = total;
+			total = Math.addExact(total, compiled[w].length);
+		}
+		this.cells = new int[total];
+		for (int w = 0; w < n; w++) {
+			System.arraycopy(compiled[w], 0, this.cells, this.base[w], compiled[w].length);
+		}
+
+		this.agentX = new int[this.size];
+		this.agentY = new int[this.size];
+		this.direction = new int[this.size];
+		this.score = new int[this.size];
+		this.goldTaken = new long[this.size];
+		this.hasArrow = new boolean[this.size];
+		this.hasGold = new boolean[this.size];
+		this.wumpusAlive = new boolean[this.size];
+		this.finished = new boolean[this.size];
+		for (int e = 0; e < this.size; e++) {
+			reset(e);
+		}
+	}
+
+	private static WorldModel[] repeat(final WorldModel world, final int episodes) {
+		final WorldModel[] worlds = new WorldModel[episodes];
+		for (int e = 0; e < episodes; e++) {
+			worlds[e] = world;
+		}
+		return worlds;
+	}
+
+	/**
+	 * Compiles world w into an array of squares covering its bounds, row by row.
+	 */
+	private int[] compile(final int w) {
+		final WorldModel model = this.worlds[w];
+		final int[] bounds = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+		model.forEachSquare((x, y, data) -> {
+			bounds[0] = Math.min(bounds[0], x);
+			bounds[1] = Math.min(bounds[1], y);
+			bounds[2] = Math.max(bounds[2], x);
+			bounds[3] = Math.max(bounds[3], y);
+		});
+		if (bounds[0] > bounds[2]) {
+			bounds[0] = bounds[2] = bounds[1] = bounds[3] = 0;
+		}
+		final int minX = bounds[0], minY = bounds[1];
+		final int w0 = bounds[2] - minX + 1, h0 = bounds[3] - minY + 1;
+		this.originX[w] = minX;
+		this.originY[w] = minY;
+		this.width[w] = w0;
+		this.height[w] = h0;
+		this.startX[w] = model.getStartX();
+		this.startY[w] = model.getStartY();
+
+		final int[] result = new int[Math.multiplyExact(w0, h0)];
+		final int[] golds = { 0 };
+		model.forEachSquare((x, y, data) -> {
+			int cell = 0;
+			if ((data & WorldModel.BREEZE) != 0) {
+				cell |= C_BREEZE;
+			}
+			if ((data & WorldModel.SMELL) != 0) {
+				cell |= C_STENCH;
+			}
+			if ((data & WorldModel.WALL) != 0) {
+				cell |= C_WALL;
+			}
+			if ((data & WorldModel.PIT) != 0) {
+				cell |= C_PIT;
+			}
+			if ((data & WorldModel.WUMPUS) != 0) {
+				cell |= C_WUMPUS;
+			}
+			// resetting a world puts the gold back on the gold location
+			final boolean gold = (data & WorldModel.GOLD) != 0
+					|| (x == model.getGoldX() && y == model.getGoldY());
+			if (gold) {
+				if (golds[0] == MAX_GOLD) {
+					throw new IllegalArgumentException("world has more than " + MAX_GOLD + " gold squares");
+				}
+				cell |= C_GOLD | (golds[0]++ << GOLD_SHIFT);
+			}
+			result[(y - minY) * w0 + (x - minX)] = cell;
+		});
+		for (int dy = 0; dy < h0; dy++) {
+			for (int dx = 0; dx < w0; dx++) {
+				for (int d = 0; d < 4; d++) {
+					if (model.arrowHitsWumpus(minX + dx, minY + dy, d * 90)) {
+						result[dy * w0 + dx] |= C_ARROW << d;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of episodes.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Puts episode e back at the start, like {@link WorldModel#reset()}: agent on
+	 * the start location facing east, with the arrow, without gold, wumpus alive,
+	 * the gold back in place and score 0.
+	 */
+	public void reset(final int e) {
+		final int w = this.world[e];
+		this.agentX[e] = this.startX[w];
+		this.agentY[e] = this.startY[w];
+		this.direction[e] = 0;
+		this.score[e] = 0;
+		this.goldTaken[e] = 0;
+		this.hasArrow[e] = true;
+		this.hasGold[e] = false;
+		this.wumpusAlive[e] = true;
+		this.finished[e] = killed(e, cell(e, this.agentX[e], this.agentY[e]));
+	}
+
+	/**
+	 * Does one action in every episode. Episodes that have finished are left
+	 * alone; they perceive 0 and get reward 0.
+	 *
+	 * @param actions  per episode, the action number (see {@link TheGame}).
+	 * @param percepts receives per episode the mask of the percept after the
+	 *                 action, 0 if the episode has finished.
+	 * @param rewards  receives per episode the change of the score.
+	 */
+	public void step(final int[] actions, final int[] percepts, final int[] rewards) {
+		for (int e = 0; e < this.size; e++) {
+			final int before = this.score[e];
+			percepts[e] = act(e, actions[e]);
+			rewards[e] = this.score[e] - before;
+		}
+	}
+
+	/**
+	 * Does action in episode e.
+	 *
+	 * @return the percept mask after the action.
+	 */
+	private int act(final int e, final int action) {
+		if (this.finished[e]) {
+			return 0;
+		}
+		final int x = this.agentX[e];
+		final int y = this.agentY[e];
+		final int d = this.direction[e];
+		int percept = 0;
+
+		// Every action costs one point.
+		if (action != TheGame.NO_ACTION) {
+			this.score[e]--;
+		}
+
+		switch (action) {
+		case TheGame.FORWARD:
+			if ((cell(e, x + DX[d], y + DY[d]) & C_WALL) != 0) {
+				percept |= WumpusWorldPercept.BUMP;
+			} else {
+				this.agentX[e] = x + DX[d];
+				this.agentY[e] = y + DY[d];
+			}
+			break;
+		case TheGame.GRAB:
+			final int here = cell(e, x, y);
+			if (goldPresent(e, here)) {
+				this.hasGold[e] = true;
+				this.score[e] += 1000;
+				this.goldTaken[e] |= 1L << (here >>> GOLD_SHIFT);
+			}
+			break;
+		case TheGame.SHOOT:
+			if (this.hasArrow[e]) {
+				this.score[e] -= 10;
+				this.hasArrow[e] = false;
+				if (this.wumpusAlive[e] && arrowHits(e, x, y, d)) {
+					this.wumpusAlive[e] = false;
+					percept |= WumpusWorldPercept.SCREAM;
+				}
+			}
+			break;
+		case TheGame.CLIMB:
+			final int w = this.world[e];
+			if (x == this.startX[w] && y == this.startY[w]) {
+				this.finished[e] = true;
+				return 0;
+			}
+			break;
+		case TheGame.TURN_RIGHT:
+			this.direction[e] = (d + 3) & 3;
+			break;
+		case TheGame.TURN_LEFT:
+			this.direction[e] = (d + 1) & 3;
+			break;
+		default:
+			// NO_ACTION, and unknown actions are ignored
+		}
+
+		final int now = cell(e, this.agentX[e], this.agentY[e]);
+		if (killed(e, now)) {
+			this.score[e] -= 1000; // just died...
+			this.finished[e] = true;
+			return 0;
+		}
+		return percept | (now & (C_BREEZE | C_STENCH)) | (goldPresent(e, now) ? C_GOLD : 0);
+	}
+
+	/**
+	 * @return the compiled square (x,y) of the world of episode e; 0 outside the
+	 *         bounds of the world.
+	 */
+	private int cell(final int e, final int x, final int y) {
+		final int w = this.world[e];
+		final int dx = x - this.originX[w];
+		final int dy = y - this.originY[w];
+		if (dx < 0 || dy < 0 || dx >= this.width[w] || dy >= this.height[w]) {
+			return 0;
+		}
+		return this.cells[this.base[w] + dy * this.width[w] + dx];
+	}
+
+	private boolean goldPresent(final int e, final int cell) {
+		return (cell & C_GOLD) != 0 && (this.goldTaken[e] & (1L << (cell >>> GOLD_SHIFT))) == 0;
+	}
+
+	private boolean killed(final int e, final int cell) {
+		return (cell & C_PIT) != 0 || ((cell & C_WUMPUS) != 0 && this.wumpusAlive[e]);
+	}
+
+	private boolean arrowHits(final int e, final int x, final int y, final int d) {
+		final int w = this.world[e];
+		final int dx = x - this.originX[w];
+		final int dy = y - this.originY[w];
+		if (dx < 0 || dy < 0 || dx >= this.width[w] || dy >= this.height[w]) {
+			// outside the bounds the agent walks in the void; ask the world
+			return this.worlds[w].arrowHitsWumpus(x, y, d * 90);
+		}
+		return (this.cells[this.base[w] + dy * this.width[w] + dx] & (C_ARROW << d)) != 0;
+	}
+
+	public int getAgentX(final int e) {
+		return this.agentX[e];
+	}
+
+	public int getAgentY(final int e) {
+		return this.agentY[e];
+	}
+
+	public int getAgentOrientation(final int e) {
+		return this.direction[e] * 90;
+	}
+
+	public boolean agentHasArrow(final int e) {
+		return this.hasArrow[e];
+	}
+
+	public boolean agentHasGold(final int e) {
+		return this.hasGold[e];
+	}
+
+	public boolean wumpusIsAlive(final int e) {
+		return this.wumpusAlive[e];
+	}
+
+	/**
+	 * @return true if the agent of episode e climbed out or died.
+	 */
+	public boolean gameFinished(final int e) {
+		return this.finished[e];
+	}
+
+	public int getScore(final int e) {
+		return this.score[e];
+	}
+}
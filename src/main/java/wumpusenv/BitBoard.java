@@ -0,0 +1,249 @@
+package wumpusenv;
+
+/**
+ * BitBoard is a set of squares inside a rectangle of the cave, stored as one
+ * bit per square. Each row of the rectangle takes a whole number of longs; bit
+ * i of word j of a row stands for square {@code getX() + 64 * j + i}. The
+ * operations on whole boards ({@link #adjacent()}, {@link #and(BitBoard)},
+ * ...) handle 64 squares per step with shifts and bitwise operators, so a
+ * question like "which squares are next to a pit" is answered at memory speed
+ * instead of with a lookup per square.
+ *
+ * @see WorldModel#getPlane(int)
+ */
+public final class BitBoard {
+	/**
+	 * Callback for {@link BitBoard#forEach(Visitor)}.
+	 */
+	public interface Visitor {
+		void visit(int x, int y);
+	}
+
+	private final int originX, originY, width, height;
+	private final int wordsPerRow;
+	private final long[] words;
+
+	/**
+	 * Creates an empty board.
+	 *
+	 * @param x      x coordinate of the lower left square.
+	 * @param y      y coordinate of the lower left square.
+	 * @param width  number of squares in a row.
+	 * @param height number of rows.
+	 */
+	public BitBoard(final int x, final int y, final int width, final int height) {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException("negative size " + width + "x" + height);
+		}
+		this.originX = x;
+		this.originY = y;
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long[Math.multiplyExact(this.wordsPerRow, height)];
+	}
+
+	public int getX() {
+		return this.originX;
+	}
+
+	public int getY() {
+		return this.originY;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * @return true if (x,y) lies inside the rectangle of this board.
+	 */
+	public boolean covers(final int x, final int y) {
+		final int dx = x - this.originX;
+		final int dy = y - this.originY;
+		return dx >= 0 && dy >= 0 && dx < this.width && dy < this.height;
+	}
+
+	/**
+	 * @return true if square (x,y) is in the set. Squares outside the rectangle
+	 *         are never in the set.
+	 */
+	public boolean get(final int x, final int y) {
+		final int dx = x - this.originX;
+		final int dy = y - this.originY;
+		if (dx < 0 || dy < 0 || dx >= this.width || dy >= this.height) {
+			return false;
+		}
+		return (this.words[dy * this.wordsPerRow + (dx >>> 6)] & (1L << dx)) != 0;
+	}
+
+	/**
+	 * Adds square (x,y) to or removes it from the set.
+	 *
+	 * @throws IndexOutOfBoundsException if (x,y) is outside the rectangle.
+	 */
+	public void set(final int x, final int y, final boolean value) {
+		if (!covers(x, y)) {
+			throw new IndexOutOfBoundsException("(" + x + "," + y + ") outside board");
+		}
+		final int dx = x - this.originX;
+		final int i = (y - this.originY) * this.wordsPerRow + (dx >>> 6);
+		if (value) {
+			this.words[i] |= 1L << dx;
+		} else {
+			this.words[i] &= ~(1L << dx);
+		}
+	}
+
+	/**
+	 * Returns 64 squares of a row as a word: bit i is square (x+i, y). Squares
+	 * outside the rectangle read as 0.
+	 */
+	long bits(final int x, final int y) {
+		final int dy = y - this.originY;
+		final int dx = x - this.originX;
+		if (dy < 0 || dy >= this.height || dx >= this.width || dx <= -64) {
+			return 0;
+		}
+		final int row = dy * this.wordsPerRow;
+		final int w = dx >> 6;
+		final int b = dx & 63;
+		final long lo = (w >= 0) ? this.words[row + w] : 0;
+		if (b == 0) {
+			return lo;
+		}
+		final long hi = (w + 1 < this.wordsPerRow) ? this.words[row + w + 1] : 0;
+		return (lo >>> b) | (hi << (64 - b));
+	}
+
+	/**
+	 * @return mask of the squares of word j of a row that lie inside the
+	 *         rectangle.
+	 */
+	private long validBits(final int j) {
+		final int remaining = this.width - (j << 6);
+		return remaining >= 64 ? -1L : (1L << remaining) - 1;
+	}
+
+	/**
+	 * @return a new board with the given rectangle, holding the squares of this
+	 *         board that lie inside it.
+	 */
+	public BitBoard region(final int x, final int y, final int width, final int height) {
+		final BitBoard result = new BitBoard(x, y, width, height);
+		for (int r = 0; r < height; r++) {
+			for (int j = 0; j < result.wordsPerRow; j++) {
+				result.words[r * result.wordsPerRow + j] = bits(x + (j << 6), y + r) & result.validBits(j);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the squares that have a horizontal or vertical neighbour in this
+	 *         set. The result is one square larger on every side than this board.
+	 */
+	public BitBoard adjacent() {
+		final BitBoard result = new BitBoard(this.originX - 1, this.originY - 1, this.width + 2, this.height + 2);
+		for (int r = 0; r < result.height; r++) {
+			final int y = result.originY + r;
+			for (int j = 0; j < result.wordsPerRow; j++) {
+				final int x = result.originX + (j << 6);
+				final long around = bits(x, y - 1) | bits(x, y + 1) | bits(x - 1, y) | bits(x + 1, y);
+				result.words[r * result.wordsPerRow + j] = around & result.validBits(j);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the squares that are in this set and in other, on the rectangle of
+	 *         this board.
+	 */
+	public BitBoard and(final BitBoard other) {
+		final BitBoard result = new BitBoard(this.originX, this.originY, this.width, this.height);
+		for (int r = 0; r < this.height; r++) {
+			for (int j = 0; j < this.wordsPerRow; j++) {
+				final int i = r * this.wordsPerRow + j;
+				result.words[i] = this.words[i] & other.bits(this.originX + (j << 6), this.originY + r);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the squares that are in this set or in other, on the rectangle of
+	 *         this board.
+	 */
+	public BitBoard or(final BitBoard other) {
+		final BitBoard result = new BitBoard(this.originX, this.originY, this.width, this.height);
+		for (int r = 0; r < this.height; r++) {
+			for (int j = 0; j < this.wordsPerRow; j++) {
+				final int i = r * this.wordsPerRow + j;
+				result.words[i] = (this.words[i] | other.bits(this.originX + (j << 6), this.originY + r))
+						& validBits(j);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the squares that are in this set but not in other.
+	 */
+	public BitBoard andNot(final BitBoard other) {
+		final BitBoard result = new BitBoard(this.originX, this.originY, this.width, this.height);
+		for (int r = 0; r < this.height; r++) {
+			for (int j = 0; j < this.wordsPerRow; j++) {
+				final int i = r * this.wordsPerRow + j;
+				result.words[i] = this.words[i] & ~other.bits(this.originX + (j << 6), this.originY + r);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of squares in the set.
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (final long word : this.words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	public boolean isEmpty() {
+		for (final long word : this.words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Visits the squares in the set, row by row.
+	 */
+	public void forEach(final Visitor visitor) {
+		for (int r = 0; r < this.height; r++) {
+			for (int j = 0; j < this.wordsPerRow; j++) {
+				long word = this.words[r * this.wordsPerRow + j];
+				while (word != 0) {
+					final int b = Long.numberOfTrailingZeros(word);
+					visitor.visit(this.originX + (j << 6) + b, this.originY + r);
+					word &= word - 1;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BitBoard[" + this.originX + "," + this.originY + " " + this.width + "x" + this.height + ", "
+				+ cardinality() + " squares]";
+	}
+}
@@ -0,0 +1,170 @@
+package wumpusenv;
+
+/**
+ * BitplaneGrid stores the squares of a {@link WorldModel} as one
+ * {@link BitBoard} per item (GROUND, PIT, GOLD, ..., OK), plus a board that
+ * marks which squares have been written. All boards cover the same rectangle,
+ * which grows like the one of {@link DenseGrid}. Reading a whole square has to
+ * visit every board, but testing a single item is one bit test, and the board
+ * of an item can be handed out for whole-map queries at memory speed.
+ * <p>
+ * After a {@link #fork()} the boards are shared, and a board is only copied
+ * when one of its bits changes.
+ * </p>
+ */
+final class BitplaneGrid implements CaveGrid {
+	/**
+	 * Number of item bits, GROUND (0x1) up to and including OK (0x400).
+	 */
+	private static final int ITEMS = 11;
+	/**
+	 * Index of the board that marks the written squares.
+	 */
+	private static final int WRITTEN = ITEMS;
+
+	private final BitBoard[] planes = new BitBoard[ITEMS + 1];
+	/**
+	 * Per board, the owner token of the grid that may write it.
+	 */
+	private final Object[] planeOwners = new Object[ITEMS + 1];
+	/**
+	 * Boards with another owner are shared with a fork and copied before writing.
+	 */
+	private Object owner = new Object();
+	private int size = 0;
+
+	BitplaneGrid() {
+		for (int i = 0; i < this.planes.length; i++) {
+			this.planes[i] = new BitBoard(0, 0, 0, 0);
+			this.planeOwners[i] = this.owner;
+		}
+	}
+
+	@Override
+	public int get(final int x, final int y) {
+		return get(x, y, (1 << ITEMS) - 1);
+	}
+
+	/**
+	 * Only looks at the boards of the items in mask.
+	 */
+	@Override
+	public int get(final int x, final int y, final int mask) {
+		if (!this.planes[WRITTEN].get(x, y)) {
+			return NONE;
+		}
+		int data = 0;
+		for (int bits = mask & ((1 << ITEMS) - 1); bits != 0; bits &= bits - 1) {
+			final int b = Integer.numberOfTrailingZeros(bits);
+			if (this.planes[b].get(x, y)) {
+				data |= 1 << b;
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Bits of data above {@link WorldModel#OK} are not stored.
+	 */
+	@Override
+	public void set(final int x, final int y, final int data) {
+		if (!this.planes[WRITTEN].covers(x, y)) {
+			grow(x, y);
+		}
+		int old = get(x, y);
+		if (old == NONE) {
+			writablePlane(WRITTEN).set(x, y, true);
+			this.size++;
+			old = 0;
+		}
+		// only touch the boards whose bit changes
+		for (int bits = (old ^ data) & ((1 << ITEMS) - 1); bits != 0; bits &= bits - 1) {
+			final int b = Integer.numberOfTrailingZeros(bits);
+			writablePlane(b).set(x, y, (data & (1 << b)) != 0);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void forEach(final SquareVisitor visitor) {
+		this.planes[WRITTEN].forEach((x, y) -> visitor.visit(x, y, get(x, y)));
+	}
+
+	/**
+	 * Shares all boards with the new grid. Both grids get a new owner token, so
+	 * neither owns the shared boards anymore.
+	 */
+	@Override
+	public CaveGrid fork() {
+		final BitplaneGrid copy = new BitplaneGrid();
+		System.arraycopy(this.planes, 0, copy.planes, 0, this.planes.length);
+		copy.owner = new Object();
+		copy.size = this.size;
+		this.owner = new Object();
+		return copy;
+	}
+
+	/**
+	 * @return board i, copied first if it is shared with a fork.
+	 */
+	private BitBoard writablePlane(final int i) {
+		if (this.planeOwners[i] != this.owner) {
+			final BitBoard plane = this.planes[i];
+			this.planes[i] = plane.region(plane.getX(), plane.getY(), plane.getWidth(), plane.getHeight());
+			this.planeOwners[i] = this.owner;
+		}
+		return this.planes[i];
+	}
+
+	/**
+	 * Combines the boards of the items with word-wide ANDs.
+	 */
+	@Override
+	public BitBoard plane(final int item, final int x, final int y, final int width, final int height) {
+		if (item == WorldModel.CLEAR || (item & ~((1 << ITEMS) - 1)) != 0) {
+			return CaveGrid.super.plane(item, x, y, width, height);
+		}
+		BitBoard result = null;
+		for (int bits = item; bits != 0; bits &= bits - 1) {
+			final BitBoard plane = this.planes[Integer.numberOfTrailingZeros(bits)];
+			result = (result == null) ? plane.region(x, y, width, height) : result.and(plane);
+		}
+		return result;
+	}
+
+	/**
+	 * Enlarges the rectangle of all boards so that it contains (x,y), with the
+	 * same slack as {@link DenseGrid}.
+	 */
+	private void grow(final int x, final int y) {
+		final BitBoard old = this.planes[WRITTEN];
+		int minX, minY, maxX, maxY;
+		if (old.getWidth() == 0 || old.getHeight() == 0) {
+			minX = maxX = x;
+			minY = maxY = y;
+		} else {
+			minX = old.getX();
+			minY = old.getY();
+			maxX = old.getX() + old.getWidth() - 1;
+			maxY = old.getY() + old.getHeight() - 1;
+			if (x < minX) {
+				minX = x - old.getWidth() / 2;
+			} else if (x > maxX) {
+				maxX = x + old.getWidth() / 2;
+			}
+			if (y < minY) {
+				minY = y - old.getHeight() / 2;
+			} else if (y > maxY) {
+				maxY = y + old.getHeight() / 2;
+			}
+		}
+		for (int i = 0; i < this.planes.length; i++) {
+			this.planes[i] = this.planes[i].region(minX, minY, maxX - minX + 1, maxY - minY + 1);
+			this.planeOwners[i] = this.owner;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package wumpusenv;
+
+/**
+ * CaveGrid is the storage behind a {@link WorldModel}: it maps grid positions
+ * to the items on that square (see the constants in WorldModel). It knows
+ * nothing about the rules of the game; WorldModel keeps the bounds and the
+ * positions of agent, wumpus, gold and start.
+ */
+interface CaveGrid {
+	/**
+	 * Value of a square that has never been written. It tells an empty square
+	 * apart from a square that was set to {@link WorldModel#CLEAR}.
+	 */
+	int NONE = -1;
+
+	/**
+	 * @return data of square (x,y), or {@link #NONE} if it was never written.
+	 */
+	int get(int x, int y);
+
+	/**
+	 * Reads only the items in mask. Storage that keeps items apart can answer
+	 * this without reading the whole square.
+	 *
+	 * @return data of square (x,y) masked with mask, or {@link #NONE} if the
+	 *         square was never written.
+	 */
+	default int get(final int x, final int y, final int mask) {
+		final int data = get(x, y);
+		return (data == NONE) ? NONE : data & mask;
+	}
+
+	void set(int x, int y, int data);
+
+	/**
+	 * Tells the grid that the squares inside a rectangle are about to be
+	 * written, so that it can make room for all of them at once. Only a hint.
+	 */
+	default void reserve(final int minX, final int minY, final int maxX, final int maxY) {
+	}
+
+	/**
+	 * @return the number of squares that have been written.
+	 */
+	int size();
+
+	/**
+	 * Visits every square that has been written. Squares added by the visitor
+	 * itself are not guaranteed to be visited.
+	 */
+	void forEach(SquareVisitor visitor);
+
+	/**
+	 * Creates a copy of this grid in O(1). The copy shares the stored data with
+	 * this grid; from then on each of the two copies a part of the data (page,
+	 * chunk, plane) just before it writes to it for the first time.
+	 *
+	 * @return an independent grid with the same squares.
+	 */
+	CaveGrid fork();
+
+	/**
+	 * @return the squares inside the given rectangle that contain item, with the
+	 *         same meaning as {@link WorldModel#contains(int, int, int)}.
+	 */
+	default BitBoard plane(final int item, final int x, final int y, final int width, final int height) {
+		final BitBoard board = new BitBoard(x, y, width, height);
+		forEach((sx, sy, data) -> {
+			if (data != WorldModel.CLEAR && (data & item) == item && board.covers(sx, sy)) {
+				board.set(sx, sy, true);
+			}
+		});
+		return board;
+	}
+}
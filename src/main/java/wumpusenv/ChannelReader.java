@@ -0,0 +1,98 @@
+package wumpusenv;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ChannelReader reads what a {@link ChannelWriter} wrote, through one buffer
+ * that is refilled from the channel in large reads, or straight from a buffer
+ * that holds all the data, e.g. a mapped file.
+ */
+final class ChannelReader {
+	/**
+	 * Null if all data is in the buffer.
+	 */
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+
+	ChannelReader(final ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(ChannelWriter.BUFFER_SIZE);
+		this.buffer.flip();
+	}
+
+	/**
+	 * Reads from data, from its position to its limit, without copying.
+	 */
+	ChannelReader(final ByteBuffer data) {
+		this.channel = null;
+		this.buffer = data;
+	}
+
+	/**
+	 * Reads a string written by {@link ChannelWriter#writeString(String)} or, if
+	 * it is ASCII, by {@link java.io.DataOutput#writeUTF(String)}.
+	 */
+	String readString() throws IOException {
+		need(2);
+		final byte[] bytes = new byte[this.buffer.getShort() & 0xFFFF];
+		need(bytes.length);
+		this.buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	int readInt() throws IOException {
+		need(4);
+		return this.buffer.getInt();
+	}
+
+	long readLong() throws IOException {
+		need(8);
+		return this.buffer.getLong();
+	}
+
+	/**
+	 * Reads a varint written by {@link ChannelWriter#writeVarint(int)}.
+	 */
+	int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!this.buffer.hasRemaining()) {
+				need(1);
+			}
+			final int b = this.buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("varint too long");
+	}
+
+	/**
+	 * Makes sure that at least n bytes can be read from the buffer.
+	 *
+	 * @throws EOFException if the channel ends before that.
+	 */
+	private void need(final int n) throws IOException {
+		if (this.buffer.remaining() >= n) {
+			return;
+		}
+		if (this.channel == null) {
+			throw new EOFException();
+		}
+		if (n > this.buffer.capacity()) {
+			throw new IOException("record of " + n + " bytes does not fit the buffer");
+		}
+		this.buffer.compact();
+		while (this.buffer.position() < n) {
+			if (this.channel.read(this.buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+		this.buffer.flip();
+	}
+}
@@ -0,0 +1,124 @@
+package wumpusenv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ChannelWriter writes big-endian values to a channel through one buffer, so
+ * that the channel sees a few large writes instead of one per value. Without a
+ * channel it writes to memory, see {@link #toByteBuffer()}.
+ */
+final class ChannelWriter {
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Null if the data is kept in the buffer.
+	 */
+	private final WritableByteChannel channel;
+	private ByteBuffer buffer;
+	/**
+	 * Number of bytes handed to the channel so far.
+	 */
+	private long flushed = 0;
+
+	ChannelWriter(final WritableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer to memory, with a buffer that grows as needed.
+	 *
+	 * @param capacity the initial size of the buffer.
+	 */
+	ChannelWriter(final int capacity) {
+		this.channel = null;
+		this.buffer = ByteBuffer.allocate(Math.max(capacity, 16));
+	}
+
+	/**
+	 * @return what was written to memory, from position 0 to the limit.
+	 */
+	ByteBuffer toByteBuffer() {
+		final ByteBuffer result = this.buffer.duplicate();
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Writes a string as its length in UTF-8 bytes (a short) and the bytes. For
+	 * ASCII strings this is the same as
+	 * {@link java.io.DataOutput#writeUTF(String)}.
+	 */
+	void writeString(final String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IOException("string too long: " + bytes.length + " bytes");
+		}
+		need(2 + bytes.length);
+		this.buffer.putShort((short) bytes.length);
+		this.buffer.put(bytes);
+	}
+
+	void writeInt(final int value) throws IOException {
+		need(4);
+		this.buffer.putInt(value);
+	}
+
+	void writeLong(final long value) throws IOException {
+		need(8);
+		this.buffer.putLong(value);
+	}
+
+	/**
+	 * Writes an int as unsigned varint: 7 bits per byte, lowest first, with the
+	 * high bit set on all bytes but the last.
+	 */
+	void writeVarint(int value) throws IOException {
+		need(5);
+		while ((value & ~0x7F) != 0) {
+			this.buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	/**
+	 * @return the number of bytes written so far, flushed or not.
+	 */
+	long size() {
+		return this.flushed + this.buffer.position();
+	}
+
+	/**
+	 * Writes what is left in the buffer. The channel is not closed. Does nothing
+	 * when writing to memory.
+	 */
+	void flush() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+		this.flushed += this.buffer.position();
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private void need(final int n) throws IOException {
+		if (this.buffer.remaining() >= n) {
+			return;
+		}
+		if (this.channel != null) {
+			flush();
+		} else {
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + n));
+			this.buffer.flip();
+			larger.put(this.buffer);
+			this.buffer = larger;
+		}
+	}
+}
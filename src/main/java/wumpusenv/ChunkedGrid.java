@@ -0,0 +1,157 @@
+package wumpusenv;
+
+import java.util.Arrays;
+
+/**
+ * ChunkedGrid stores the squares of a {@link WorldModel} in square tiles
+ * ("chunks") of {@link #CHUNK_SIZE} x {@link #CHUNK_SIZE} squares. A chunk is a
+ * plain int array that is allocated when one of its squares is written for the
+ * first time, so large empty parts of a cave cost nothing. Chunks are found
+ * through a {@link LongMap} keyed by the chunk coordinates. The chunk that was
+ * used last is remembered, so an agent walking around inside one chunk does not
+ * even need the map.
+ * <p>
+ * After a {@link #fork()} the chunks are shared, and a chunk is only copied when
+ * it is written to.
+ * </p>
+ */
+final class ChunkedGrid implements CaveGrid {
+	private static final int CHUNK_BITS = 6;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * A chunk and the owner token of the grid that may write it.
+	 */
+	private static final class Chunk {
+		final int[] cells;
+		final Object owner;
+
+		Chunk(final int[] cells, final Object owner) {
+			this.cells = cells;
+			this.owner = owner;
+		}
+	}
+
+	private LongMap<Chunk> chunks = new LongMap<>();
+	/**
+	 * Chunks with another owner are shared with a fork and copied before writing.
+	 */
+	private Object owner = new Object();
+	/**
+	 * True if the chunk map itself is shared with a fork.
+	 */
+	private boolean mapShared = false;
+	private long lastKey;
+	private Chunk lastChunk = null;
+	private int size = 0;
+
+	@Override
+	public int get(final int x, final int y) {
+		final Chunk chunk = chunk(x, y);
+		if (chunk == null) {
+			return NONE;
+		}
+		return chunk.cells[index(x, y)];
+	}
+
+	@Override
+	public void set(final int x, final int y, final int data) {
+		Chunk chunk = chunk(x, y);
+		if (chunk == null || chunk.owner != this.owner) {
+			final int[] cells;
+			if (chunk == null) {
+				cells = new int[CHUNK_SIZE * CHUNK_SIZE];
+				Arrays.fill(cells, NONE);
+			} else {
+				cells = chunk.cells.clone();
+			}
+			if (this.mapShared) {
+				this.chunks = this.chunks.copy();
+				this.mapShared = false;
+			}
+			chunk = new Chunk(cells, this.owner);
+			this.lastKey = key(x >> CHUNK_BITS, y >> CHUNK_BITS);
+			this.lastChunk = chunk;
+			this.chunks.put(this.lastKey, chunk);
+		}
+		final int i = index(x, y);
+		if (chunk.cells[i] == NONE) {
+			this.size++;
+		}
+		chunk.cells[i] = data;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Visits the squares chunk by chunk, in no particular order of the chunks.
+	 */
+	@Override
+	public void forEach(final SquareVisitor visitor) {
+		// Take the chunks first, the visitor may add new ones.
+		final int n = this.chunks.capacity();
+		final long[] keys = new long[this.chunks.size()];
+		final int[][] values = new int[keys.length][];
+		int k = 0;
+		for (int slot = 0; slot < n; slot++) {
+			final Chunk chunk = this.chunks.valueAt(slot);
+			if (chunk != null) {
+				keys[k] = this.chunks.keyAt(slot);
+				values[k++] = chunk.cells;
+			}
+		}
+		for (int c = 0; c < k; c++) {
+			final int baseX = (int) (keys[c] >> 32) << CHUNK_BITS;
+			final int baseY = (int) keys[c] << CHUNK_BITS;
+			final int[] cells = values[c];
+			for (int i = 0; i < cells.length; i++) {
+				if (cells[i] != NONE) {
+					visitor.visit(baseX + (i & CHUNK_MASK), baseY + (i >> CHUNK_BITS), cells[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shares the chunk map and all chunks with the new grid. Both grids get a new
+	 * owner token, so neither owns the shared chunks anymore.
+	 */
+	@Override
+	public CaveGrid fork() {
+		final ChunkedGrid copy = new ChunkedGrid();
+		copy.chunks = this.chunks;
+		copy.mapShared = true;
+		copy.size = this.size;
+		this.owner = new Object();
+		this.mapShared = true;
+		return copy;
+	}
+
+	/**
+	 * @return the chunk holding square (x,y), or null if it was never allocated.
+	 */
+	private Chunk chunk(final int x, final int y) {
+		final long key = key(x >> CHUNK_BITS, y >> CHUNK_BITS);
+		if (this.lastChunk != null && key == this.lastKey) {
+			return this.lastChunk;
+		}
+		final Chunk chunk = this.chunks.get(key);
+		if (chunk != null) {
+			this.lastKey = key;
+			this.lastChunk = chunk;
+		}
+		return chunk;
+	}
+
+	private static long key(final int chunkX, final int chunkY) {
+		return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+	}
+
+	private static int index(final int x, final int y) {
+		return ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+	}
+}
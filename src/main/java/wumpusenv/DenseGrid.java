@@ -0,0 +1,199 @@
+package wumpusenv;
+
+import java.util.Arrays;
+
+/**
+ * DenseGrid stores the squares of a {@link WorldModel} in int arrays that cover
+ * a rectangle of the world, row by row. Reading a square is a bounds check and
+ * an array read; nothing is hashed, boxed or allocated. The rectangle grows
+ * (with some slack, so repeated growth stays cheap) when a square outside of it
+ * is written. This is the default storage; for very large caves that are
+ * mostly empty use {@link ChunkedGrid}.
+ * <p>
+ * The squares are cut into pages of {@link #PAGE_SIZE} squares, so that a
+ * {@link #fork()} only has to copy the pages that are written afterwards.
+ * </p>
+ */
+final class DenseGrid implements CaveGrid {
+	private static final int PAGE_BITS = 10;
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private int originX, originY, width, height;
+	private int[][] pages = new int[0][];
+	/**
+	 * Per page, the owner token of the grid that may write the page.
+	 */
+	private Object[] pageOwners = new Object[0];
+	/**
+	 * Pages with another owner are shared with a fork and copied before writing.
+	 */
+	private Object owner = new Object();
+	/**
+	 * True if the page table itself is shared with a fork.
+	 */
+	private boolean tableShared = false;
+	/**
+	 * Number of squares that have been written.
+	 */
+	private int size = 0;
+
+	@Override
+	public int get(final int x, final int y) {
+		final int dx = x - this.originX;
+		final int dy = y - this.originY;
+		if (dx < 0 || dy < 0 || dx >= this.width || dy >= this.height) {
+			return NONE;
+		}
+		final int i = dy * this.width + dx;
+		return this.pages[i >>> PAGE_BITS][i & PAGE_MASK];
+	}
+
+	@Override
+	public void set(final int x, final int y, final int data) {
+		if (x < this.originX || y < this.originY || x >= this.originX + this.width
+				|| y >= this.originY + this.height) {
+			grow(x, y);
+		}
+		final int i = (y - this.originY) * this.width + (x - this.originX);
+		final int[] page = writablePage(i >>> PAGE_BITS);
+		if (page[i & PAGE_MASK] == NONE) {
+			this.size++;
+		}
+		page[i & PAGE_MASK] = data;
+	}
+
+	/**
+	 * Allocates the rectangle exactly, if nothing has been written yet.
+	 */
+	@Override
+	public void reserve(final int minX, final int minY, final int maxX, final int maxY) {
+		if (this.width == 0 && minX <= maxX && minY <= maxY) {
+			resize(minX, minY, maxX, maxY);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Visits the squares row by row.
+	 */
+	@Override
+	public void forEach(final SquareVisitor visitor) {
+		final int[][] pages = this.pages;
+		final int width = this.width;
+		final int height = this.height;
+		final int originX = this.originX;
+		final int originY = this.originY;
+		for (int dy = 0; dy < height; dy++) {
+			for (int dx = 0; dx < width; dx++) {
+				final int i = dy * width + dx;
+				final int data = pages[i >>> PAGE_BITS][i & PAGE_MASK];
+				if (data != NONE) {
+					visitor.visit(originX + dx, originY + dy, data);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shares all pages with the new grid. Both grids get a new owner token, so
+	 * neither owns the shared pages anymore.
+	 */
+	@Override
+	public CaveGrid fork() {
+		final DenseGrid copy = new DenseGrid();
+		copy.originX = this.originX;
+		copy.originY = this.originY;
+		copy.width = this.width;
+		copy.height = this.height;
+		copy.pages = this.pages;
+		copy.pageOwners = this.pageOwners;
+		copy.tableShared = true;
+		copy.size = this.size;
+		this.owner = new Object();
+		this.tableShared = true;
+		return copy;
+	}
+
+	/**
+	 * @return page p, copied first if it is shared with a fork.
+	 */
+	private int[] writablePage(final int p) {
+		if (this.pageOwners[p] == this.owner) {
+			return this.pages[p];
+		}
+		if (this.tableShared) {
+			this.pages = this.pages.clone();
+			this.pageOwners = this.pageOwners.clone();
+			this.tableShared = false;
+		}
+		final int[] page = this.pages[p].clone();
+		this.pages[p] = page;
+		this.pageOwners[p] = this.owner;
+		return page;
+	}
+
+	/**
+	 * Enlarges the covered rectangle so that it contains (x,y). On the side(s)
+	 * where the rectangle grows we add half the current extent as slack.
+	 */
+	private void grow(final int x, final int y) {
+		int minX, minY, maxX, maxY;
+		if (this.width == 0 || this.height == 0) {
+			minX = maxX = x;
+			minY = maxY = y;
+		} else {
+			minX = this.originX;
+			minY = this.originY;
+			maxX = this.originX + this.width - 1;
+			maxY = this.originY + this.height - 1;
+			if (x < minX) {
+				minX = x - this.width / 2;
+			} else if (x > maxX) {
+				maxX = x + this.width / 2;
+			}
+			if (y < minY) {
+				minY = y - this.height / 2;
+			} else if (y > maxY) {
+				maxY = y + this.height / 2;
+			}
+		}
+		resize(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Makes the covered rectangle (minX,minY)-(maxX,maxY), which must contain the
+	 * current one, and copies the squares over.
+	 */
+	private void resize(final int minX, final int minY, final int maxX, final int maxY) {
+		final int newWidth = maxX - minX + 1;
+		final int newHeight = maxY - minY + 1;
+		final int n = Math.multiplyExact(newWidth, newHeight);
+		final int[][] newPages = new int[(n + PAGE_MASK) >>> PAGE_BITS][PAGE_SIZE];
+		final Object[] newOwners = new Object[newPages.length];
+		for (final int[] page : newPages) {
+			Arrays.fill(page, NONE);
+		}
+		Arrays.fill(newOwners, this.owner);
+		for (int dy = 0; dy < this.height; dy++) {
+			final int from = dy * this.width;
+			final int to = (this.originY + dy - minY) * newWidth + (this.originX - minX);
+			for (int dx = 0; dx < this.width; dx++) {
+				final int i = from + dx;
+				final int j = to + dx;
+				newPages[j >>> PAGE_BITS][j & PAGE_MASK] = this.pages[i >>> PAGE_BITS][i & PAGE_MASK];
+			}
+		}
+		this.pages = newPages;
+		this.pageOwners = newOwners;
+		this.tableShared = false;
+		this.originX = minX;
+		this.originY = minY;
+		this.width = newWidth;
+		this.height = newHeight;
+	}
+}
@@ -7,7 +7,7 @@ import java.util.Map;
 
 public class Images {
 	private final Map<String, Image> fImages = new HashMap<>();
-	private static String fPath = "wumpusenv/images"; // Wouter: HUH, does not exist and yet the stuff works??
+	private static final String fPath = "wumpusenv/images"; // Wouter: HUH, does not exist and yet the stuff works??
 
 	public Images(final WumpusApp pWA) {
 		// Used in WumpusApp, WumpusWorld and WumpusCanvas
@@ -0,0 +1,185 @@
+package wumpusenv;
+
+import java.util.Arrays;
+
+/**
+ * LineIndex knows, for every row and every column of a {@link WorldModel},
+ * the sorted positions of the squares that hold one item (e.g. WALL). This
+ * answers "what is the first wall to the east of (x,y)" with a binary search
+ * instead of a walk over the squares in between.
+ * <p>
+ * The sorted position arrays are never changed in place: adding or removing a
+ * square replaces the array of its row and column. The index can therefore be
+ * shared between forked worlds; only the maps from row/column to array are
+ * copied, on the first change after a {@link #fork()}.
+ * </p>
+ */
+final class LineIndex {
+	private static final int[] EMPTY = new int[0];
+
+	/**
+	 * Row y maps to the sorted x coordinates of the squares on that row.
+	 */
+	private LongMap<int[]> rows;
+	/**
+	 * Column x maps to the sorted y coordinates of the squares in that column.
+	 */
+	private LongMap<int[]> columns;
+	private boolean shared = false;
+
+	private LineIndex(final LongMap<int[]> rows, final LongMap<int[]> columns) {
+		this.rows = rows;
+		this.columns = columns;
+	}
+
+	/**
+	 * Builds the index of item in one pass over the grid.
+	 */
+	static LineIndex build(final CaveGrid grid, final int item) {
+		// Collect the squares twice, as sortable (row, x) and (column, y) keys.
+		final long[][] keys = { new long[64], new long[64] };
+		final int[] n = { 0 };
+		grid.forEach((x, y, data) -> {
+			if (data != WorldModel.CLEAR && (data & item) == item) {
+				if (n[0] == keys[0].length) {
+					keys[0] = Arrays.copyOf(keys[0], n[0] * 2);
+					keys[1] = Arrays.copyOf(keys[1], n[0] * 2);
+				}
+				keys[0][n[0]] = sortKey(y, x);
+				keys[1][n[0]] = sortKey(x, y);
+				n[0]++;
+			}
+		});
+		return new LineIndex(group(keys[0], n[0]), group(keys[1], n[0]));
+	}
+
+	/**
+	 * Key that sorts by line first and by position within the line next.
+	 */
+	private static long sortKey(final int line, final int position) {
+		return ((long) line << 32) | ((position ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+	}
+
+	private static LongMap<int[]> group(final long[] keys, final int n) {
+		Arrays.sort(keys, 0, n);
+		final LongMap<int[]> lines = new LongMap<>();
+		int start = 0;
+		while (start < n) {
+			final int line = (int) (keys[start] >> 32);
+			int end = start + 1;
+			while (end < n && (int) (keys[end] >> 32) == line) {
+				end++;
+			}
+			final int[] positions = new int[end - start];
+			for (int i = start; i < end; i++) {
+				positions[i - start] = (int) keys[i] ^ Integer.MIN_VALUE;
+			}
+			lines.put(line, positions);
+			start = end;
+		}
+		return lines;
+	}
+
+	/**
+	 * @return a copy sharing all data with this index.
+	 */
+	LineIndex fork() {
+		this.shared = true;
+		final LineIndex copy = new LineIndex(this.rows, this.columns);
+		copy.shared = true;
+		return copy;
+	}
+
+	void add(final int x, final int y) {
+		unshare();
+		this.rows.put(y, insert(line(this.rows, y), x));
+		this.columns.put(x, insert(line(this.columns, x), y));
+	}
+
+	void remove(final int x, final int y) {
+		unshare();
+		this.rows.put(y, delete(line(this.rows, y), x));
+		this.columns.put(x, delete(line(this.columns, x), y));
+	}
+
+	/**
+	 * @return the first x on row y that is larger than x, or
+	 *         {@link Integer#MAX_VALUE} if there is none.
+	 */
+	int nextInRow(final int y, final int x) {
+		return next(line(this.rows, y), x);
+	}
+
+	/**
+	 * @return the last x on row y that is smaller than x, or
+	 *         {@link Integer#MIN_VALUE} if there is none.
+	 */
+	int previousInRow(final int y, final int x) {
+		return previous(line(this.rows, y), x);
+	}
+
+	/**
+	 * @return the first y in column x that is larger than y, or
+	 *         {@link Integer#MAX_VALUE} if there is none.
+	 */
+	int nextInColumn(final int x, final int y) {
+		return next(line(this.columns, x), y);
+	}
+
+	/**
+	 * @return the last y in column x that is smaller than y, or
+	 *         {@link Integer#MIN_VALUE} if there is none.
+	 */
+	int previousInColumn(final int x, final int y) {
+		return previous(line(this.columns, x), y);
+	}
+
+	private void unshare() {
+		if (this.shared) {
+			this.rows = this.rows.copy();
+			this.columns = this.columns.copy();
+			this.shared = false;
+		}
+	}
+
+	private static int[] line(final LongMap<int[]> lines, final int key) {
+		final int[] positions = lines.get(key);
+		return (positions == null) ? EMPTY : positions;
+	}
+
+	private static int next(final int[] positions, final int from) {
+		int i = Arrays.binarySearch(positions, from);
+		i = (i >= 0) ? i + 1 : -i - 1;
+		return (i < positions.length) ? positions[i] : Integer.MAX_VALUE;
+	}
+
+	private static int previous(final int[] positions, final int from) {
+		int i = Arrays.binarySearch(positions, from);
+		i = (i >= 0) ? i - 1 : -i - 2;
+		return (i >= 0) ? positions[i] : Integer.MIN_VALUE;
+	}
+
+	private static int[] insert(final int[] positions, final int value) {
+		final int i = Arrays.binarySearch(positions, value);
+		if (i >= 0) {
+			return positions;
+		}
+		final int at = -i - 1;
+		final int[] result = new int[positions.length + 1];
+		System.arraycopy(positions, 0, result, 0, at);
+		result[at] = value;
+		System.arraycopy(positions, at, result, at + 1, positions.length - at);
+		return result;
+	}
+
+	private static int[] delete(final int[] positions, final int value) {
+		final int at = Arrays.binarySearch(positions, value);
+		if (at < 0) {
+			return positions;
+		}
+		final int[] result = new int[positions.length - 1];
+		System.arraycopy(positions, 0, result, 0, at);
+		System.arraycopy(positions, at + 1, result, at, positions.length - at - 1);
+		return result;
+	}
+}
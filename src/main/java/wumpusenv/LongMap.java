@@ -0,0 +1,127 @@
+package wumpusenv;
+
+/**
+ * A small hash map from primitive long keys to objects. It uses open addressing
+ * with linear probing in two parallel arrays, so looking up a key neither boxes
+ * nor allocates. Entries can not be removed and null values are not allowed;
+ * that is all the grid code needs.
+ *
+ * @param <V> the type of the values.
+ */
+final class LongMap<V> {
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+
+	LongMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expected number of entries the map should hold without growing.
+	 */
+	LongMap(final int expected) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expected) {
+			capacity <<= 1;
+		}
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+	}
+
+	/**
+	 * @return value of key, or null if the map has no such key.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(final long key) {
+		final int mask = this.keys.length - 1;
+		for (int i = slot(key, mask);; i = (i + 1) & mask) {
+			final Object value = this.values[i];
+			if (value == null) {
+				return null;
+			}
+			if (this.keys[i] == key) {
+				return (V) value;
+			}
+		}
+	}
+
+	void put(final long key, final V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null values are not allowed");
+		}
+		final int mask = this.keys.length - 1;
+		for (int i = slot(key, mask);; i = (i + 1) & mask) {
+			if (this.values[i] == null) {
+				this.keys[i] = key;
+				this.values[i] = value;
+				if (++this.size > this.keys.length * 3 / 4) {
+					rehash(this.keys.length << 1);
+				}
+				return;
+			}
+			if (this.keys[i] == key) {
+				this.values[i] = value;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return a map with the same entries; the values themselves are shared.
+	 */
+	LongMap<V> copy() {
+		final LongMap<V> copy = new LongMap<>(0);
+		copy.keys = this.keys.clone();
+		copy.values = this.values.clone();
+		copy.size = this.size;
+		return copy;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * The slots of the map can be walked with {@link #keyAt(int)} and
+	 * {@link #valueAt(int)} for every index below this capacity.
+	 */
+	int capacity() {
+		return this.keys.length;
+	}
+
+	long keyAt(final int slot) {
+		return this.keys[slot];
+	}
+
+	/**
+	 * @return value in slot, or null if the slot is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	V valueAt(final int slot) {
+		return (V) this.values[slot];
+	}
+
+	private void rehash(final int capacity) {
+		final long[] oldKeys = this.keys;
+		final Object[] oldValues = this.values;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j], mask);
+				while (this.values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int slot(final long key, final int mask) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
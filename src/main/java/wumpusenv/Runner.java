@@ -12,18 +12,19 @@ import java.awt.Panel;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
-
-import eis.iilang.EnvironmentState;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
- * Runner deals with control of running the Agent. It maintains the current
- * state of the board, called world model (see WorldModel), and asks the game
- * rule engine to evaluate actions and calculate percepts (see TheGame). The
+ * Runner deals with control of running the Agent. Its Simulator maintains the
+ * current state of the board, called world model (see WorldModel), and asks the
+ * game rule engine to evaluate actions and calculate percepts (see TheGame). The
  * percepts are sent to the Agent (see WumpusAgent), and then the Agent is asked
  * for its next action. The Runner provides a map of the world, showing the
  * position of all the items in the world. The Runner can do a single step, or
  * do automatic stepping (2 steps per second).
  *
+ * @see Simulator
  * @see WorldModel
  * @see WumpusAgent
  * @see TheGame
@@ -46,7 +47,6 @@ public class Runner extends Panel implements Listener {
 	private CardLayout viewSelector;
 	private Panel viewport, controls;
 	private CaveView realViewer;
-	private WorldModel realModel;
 	private EndView endView;
 
 	private Label actionLabel;
@@ -58,23 +58,13 @@ public class Runner extends Panel implements Listener {
 	private final Label hasArrowLabel = new Label(HASARROW);
 	private final Label hasGoldLabel = new Label(HASNOGOLD);
 
-	// Wumpus Game Parameters
-	private final TheGame game = new TheGame();
-	private final WumpusAgent agent;
-	// MASTER CLOCK
-	private int time = 0;
-
-	/**
-	 * Records running or paused state. In paused state no actions can be done, and
-	 * no percepts are provided.
-	 */
-	private boolean paused = false;
+	// Wumpus Game
+	private final Simulator simulator;
 
 	public Runner(final WumpusApp owner) {
 		super();
 		this.owner = owner;
-		this.realModel = new WorldModel();
-		this.agent = new WumpusAgent();
+		this.simulator = new Simulator(owner.myObserver);
 
 		if (owner.isGuiVisible()) {
 			setLayout(new BorderLayout());
@@ -90,21 +80,30 @@ public class Runner extends Panel implements Listener {
 		}
 	}
 
+	/**
+	 * Returns the game shown by this runner.
+	 *
+	 * @return the simulation kernel.
+	 */
+	public Simulator getSimulator() {
+		return this.simulator;
+	}
+
 	/**
 	 * Returns the Wumpus entity.
 	 *
 	 * @return Wumpus agent (controllable entity).
 	 */
 	public WumpusAgent getAgent() {
-		return this.agent;
+		return this.simulator.getAgent();
 	}
 
 	public int getTime() {
-		return this.time;
+		return this.simulator.getTime();
 	}
 
 	public WumpusWorldPercept getCurrentPercept() {
-		return this.game.getPercept(this.realModel);
+		return this.simulator.getCurrentPercept();
 	}
 
 	/**
@@ -114,7 +113,7 @@ public class Runner extends Panel implements Listener {
 	 * @return {@code true} if the game is running; {@code false} otherwise.
 	 */
 	public boolean gameRunning() {
-		return !this.realModel.gameFinished() && !this.paused;
+		return this.simulator.gameRunning();
 	}
 
 	/**
@@ -124,39 +123,44 @@ public class Runner extends Panel implements Listener {
 	 * @param value mode to put runner in: true is paused, false is started.
 	 */
 	public void setPaused(final boolean value) {
-		this.paused = value;
-		if (this.paused) {
-			WumpusWorld.getInstance().notifyStateChange(EnvironmentState.PAUSED);
-		} else {
-			WumpusWorld.getInstance().notifyStateChange(EnvironmentState.RUNNING);
-		}
+		this.simulator.setPaused(value);
 	}
 
 	/**
 	 * Resets the runner view and Wumpus game (score, time, initial state).
 	 */
 	public void reset() {
-		this.game.reset();
-		this.realModel.reset();
-		this.time = 0;
-		this.paused = false;
+		this.simulator.reset();
 		this.timeLabel.setText("Time: 0");
 		this.scoreLabel.setText("Score: 0");
 		this.perceptLabel.setText("percept([null,null,null,null,null], 0)");
 		this.actionLabel.setText("Action:");
 		showView(REALVIEW);
-		// notify environment listeners. HACK see #1539
-		WumpusWorld.getInstance().notifyStateChange(EnvironmentState.PAUSED);
 	}
 
 	public void setRealModel(final WorldModel real) {
-		this.realModel = real;
+		this.simulator.setModel(real);
 		if (this.owner.isGuiVisible()) {
 			this.realViewer.recenter();
 			this.realViewer.update();
 		}
 	}
 
+	/**
+	 * Puts the game back into the state of a checkpoint, see
+	 * {@link Simulator#restore(ByteBuffer)}, and shows it.
+	 *
+	 * @throws IOException if the buffer does not hold a checkpoint.
+	 */
+	public void restore(final ByteBuffer checkpoint) throws IOException {
+		this.simulator.restore(checkpoint);
+		if (this.owner.isGuiVisible()) {
+			showView(REALVIEW);
+			this.realViewer.recenter();
+			updateState("restore");
+		}
+	}
+
 	/**
 	 * nextStep does next perception-action cycle step. We want perception-action
 	 * cycle to halt between percept and action. therefore we pre-initialized the
@@ -170,44 +174,62 @@ public class Runner extends Panel implements Listener {
 	 * visibility might have changed in between.
 	 */
 	public void nextStep(final String pAction) {
+		nextStep(WumpusAgent.toAction(pAction), pAction);
+	}
 
-		// First, check whether game has finished already.
-		if (this.realModel.gameFinished()) {
-			return;
-		}
-
-		this.time++;
+	/**
+	 * Same as {@link #nextStep(String)}, for an action number of
+	 * {@link TheGame}.
+	 */
+	public void nextStep(final int pAction) {
+		nextStep(pAction, WumpusAgent.toString(pAction));
+	}
 
-		// Attempt to execute action pAction.
-		final int lActionNr = this.agent.action(pAction);
-		this.game.Action(lActionNr, this.realModel);
+	private void nextStep(final int pAction, final String pLabel) {
+		if (this.simulator.nextStep(pAction)) {
+			updateState(pLabel);
+		}
+	}
 
-		// Check whether WE'RE FINISHED
-		if (this.realModel.gameFinished()) {
-			this.owner.notifyObservers(EnvironmentState.INITIALIZING);
-			WumpusWorld.getInstance().unregisterEntity();
+	/**
+	 * Does a plan, see {@link Simulator#nextSteps(int[], int, int[], int[])}. The
+	 * views are updated once, after the plan.
+	 *
+	 * @return the number of steps done.
+	 */
+	public int nextSteps(final int[] pActions, final int pStopOn, final int[] pPercepts, final int[] pRewards) {
+		final int n = this.simulator.nextSteps(pActions, pStopOn, pPercepts, pRewards);
+		if (n > 0) {
+			updateState(WumpusAgent.toString(pActions[n - 1]));
 		}
+		return n;
+	}
 
+	/**
+	 * Shows the state of the game after an action, if the GUI is visible.
+	 */
+	private void updateState(final String pLabel) {
 		if (!this.owner.isGuiVisible()) {
 			return;
 		}
+		final WorldModel realModel = this.simulator.getModel();
 
 		// update state panel
-		this.timeLabel.setText("Time:" + this.time);
-		this.hasArrowLabel.setText(this.realModel.agentHasArrow() ? HASARROW : HASNOARROW);
-		this.hasGoldLabel.setText(this.realModel.agentHasGold() ? HASGOLD : HASNOGOLD);
+		this.timeLabel.setText("Time:" + this.simulator.getTime());
+		this.hasArrowLabel.setText(realModel.agentHasArrow() ? HASARROW : HASNOARROW);
+		this.hasGoldLabel.setText(realModel.agentHasGold() ? HASGOLD : HASNOGOLD);
 
-		this.actionLabel.setText("Action: " + pAction);
-		this.scoreLabel.setText("Score: " + this.game.getScore());
+		this.actionLabel.setText("Action: " + pLabel);
+		this.scoreLabel.setText("Score: " + this.simulator.getGameScore());
 
 		// Check whether game has finished, and, if so, show corresponding end
 		// view
-		if (this.realModel.gameFinished()) {
-			if (this.realModel.getAgentLocation().equals(this.realModel.getWumpusLocation())) {
+		if (realModel.gameFinished()) {
+			if (realModel.getAgentLocation().equals(realModel.getWumpusLocation())) {
 				this.endView.setState(EndView.WUMPUS);
-			} else if (this.realModel.contains(this.realModel.getAgentLocation(), WorldModel.PIT)) {
+			} else if (realModel.contains(realModel.getAgentLocation(), WorldModel.PIT)) {
 				this.endView.setState(EndView.PIT);
-			} else if (this.realModel.agentHasGold()) {
+			} else if (realModel.agentHasGold()) {
 				this.endView.setState(EndView.RICH);
 			} else {
 				this.endView.setState(EndView.WUSS);
@@ -215,8 +237,7 @@ public class Runner extends Panel implements Listener {
 			showView(ENDVIEW);
 		} else { // if not, show the updated perceptual info. perceptLabel is
 					// for the info window to inform user.
-			getCurrentPercept().setTime(this.time);
-			this.perceptLabel.setText("" + getCurrentPercept());
+			this.perceptLabel.setText(getCurrentPercept().toString(this.simulator.getTime()));
 		}
 		updateViews();
 	}
@@ -278,15 +299,15 @@ public class Runner extends Panel implements Listener {
 
 	@Override
 	public WorldModel getModel() {
-		return this.realModel;
+		return this.simulator.getModel();
 	}
 
 	public int getGameScore() {
-		return this.game.getScore();
+		return this.simulator.getGameScore();
 	}
 
 	public int getReward() {
-		return this.game.getReward();
+		return this.simulator.getReward();
 	}
 }
 
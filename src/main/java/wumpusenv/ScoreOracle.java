@@ -0,0 +1,538 @@
+package wumpusenv;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * ScoreOracle computes the best score an agent can get in a world, with the
+ * scoring of {@link TheGame}: -1 per action, +1000 per gold grabbed, -10 for
+ * shooting the arrow and -1000 for dying. The oracle knows the whole world, so
+ * this is an upper bound for any real agent.
+ * <p>
+ * The score is found with a shortest-path search (A*) over the states
+ * (square, orientation, arrow, wumpus alive, gold grabbed), where an action
+ * costs 1 and a shot 11. A game ends by climbing out at the start or by dying;
+ * the search minimises the loss against grabbing all gold for free, which is
+ * {@code cost + 1} plus 1000 per gold not grabbed for climbing out, and 1000
+ * more for dying. The agent may walk one square past the bounds of the world,
+ * but not further into the void.
+ * </p>
+ * <p>
+ * Distance fields, the number of steps from each square to the start and to
+ * each gold, are computed once per world and give the search its lower bound
+ * of the loss still to come. The cost of a state is kept in an array for small
+ * worlds and in a hash table for large ones, so memory grows with the states
+ * reached, not with all possible states; a search that reaches more than
+ * {@link #MAX_REACHED_STATES} states is refused.
+ * </p>
+ * <p>
+ * Results are cached by {@link WorldModel#getStateHash()}, so scoring the same
+ * world twice costs nothing. An oracle can be used from many threads; the
+ * corpus methods score all worlds in parallel.
+ * </p>
+ */
+public final class ScoreOracle {
+	/**
+	 * Worlds with more gold squares than this are not supported: the gold
+	 * grabbed is part of the state, as a bit set.
+	 */
+	public static final int MAX_GOLD = 8;
+
+	private static final int ACTION_COST = 1;
+	private static final int SHOT_COST = 1 + 10;
+	private static final int GOLD_REWARD = 1000;
+	private static final int DEATH_PENALTY = 1000;
+
+	/**
+	 * Worlds with up to this many states keep their costs in an array: 16 MB.
+	 */
+	private static final int ARRAY_STATES = 1 << 22;
+	/**
+	 * Larger worlds keep the costs of the states they reach in a hash table, of
+	 * at most this many states: 64 MB.
+	 */
+	public static final int MAX_REACHED_STATES = 1 << 22;
+
+	private static final int[] DX = { 1, 0, -1, 0 };
+	private static final int[] DY = { 0, 1, 0, -1 };
+
+	private final Map<Long, Integer> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Computes the best score of a world, played from its start (see
+	 * {@link WorldModel#reset()}). The world itself is not changed.
+	 *
+	 * @param world the world.
+	 * @return the best score; 0 if the agent cannot act at all.
+	 * @throws IllegalArgumentException if the world has more than
+	 *                                  {@link #MAX_GOLD} gold squares, more
+	 *                                  states than fit in an int, or the search
+	 *                                  reaches more than
+	 *                                  {@link #MAX_REACHED_STATES} states.
+	 */
+	public int score(final WorldModel world) {
+		final WorldModel start = world.fork();
+		start.reset();
+		final long hash = start.getStateHash();
+		final Integer known = this.cache.get(hash);
+		if (known != null) {
+			return known;
+		}
+		final int score = new Search(start).run();
+		this.cache.put(hash, score);
+		return score;
+	}
+
+	/**
+	 * Scores the worlds of seeds {@code seed} up to {@code seed + count}, in
+	 * parallel.
+	 *
+	 * @return per world, the best score.
+	 */
+	public int[] score(final WorldGenerator generator, final long seed, final int count) {
+		return IntStream.range(0, count).parallel().map(i -> score(generator.generate(seed + i))).toArray();
+	}
+
+	/**
+	 * Scores all .wld files in a directory, in parallel. Files that cannot be
+	 * loaded are reported and left out.
+	 *
+	 * @param directory the directory.
+	 * @return per file, the best score, sorted by file.
+	 */
+	public Map<File, Integer> score(final File directory) {
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(".wld"));
+		if (files == null) {
+			throw new IllegalArgumentException(directory + " is not a directory");
+		}
+		final Map<File, Integer> scores = new ConcurrentHashMap<>();
+		Arrays.stream(files).parallel().forEach(file -> {
+			try {
+				scores.put(file, score(WorldModel.load(file, WorldModel.Storage.DENSE)));
+			} catch (final Exception ex) {
+				System.err.println(file + ": " + ex);
+			}
+		});
+		return new TreeMap<>(scores);
+	}
+
+	/**
+	 * Prints the best score of every world in a directory of .wld files.
+	 *
+	 * @param args the directory.
+	 */
+	public static void main(final String[] args) {
+		if (args.length != 1) {
+			System.err.println("usage: ScoreOracle <directory with .wld files>");
+			return;
+		}
+		for (final Map.Entry<File, Integer> entry : new ScoreOracle().score(new File(args[0])).entrySet()) {
+			System.out.println(entry.getKey().getName() + " " + entry.getValue());
+		}
+	}
+
+	/**
+	 * One search over the states of one world. The squares of the world (plus a
+	 * margin of one) are numbered row by row; a state is
+	 * {@code (((square * 4 + direction) * 2 + arrow) * 2 + alive) * goldSets + grabbed}.
+	 */
+	private static final class Search {
+		private final int originX, originY, width, height;
+		private final boolean[] wall, pit, wumpus;
+		/**
+		 * Per square, the number of its gold, or -1.
+		 */
+		private final int[] gold;
+		/**
+		 * Per square and direction, whether the arrow hits a wumpus.
+		 */
+		private final boolean[] hits;
+		/**
+		 * Distance fields: per square, the least number of steps back to the
+		 * start, and per gold the least number of steps to that gold, over
+		 * squares without wall or pit, or Integer.MAX_VALUE. Wumpuses are passed,
+		 * as they may be shot, so these never overestimate.
+		 */
+		private final int[] home;
+		private final int[][] toGold;
+		/**
+		 * Per gold, its square.
+		 */
+		private final int[] goldSquare;
+		private final int golds;
+		/**
+		 * Scratch space of {@link #bound(int, int)}.
+		 */
+		private final int[] reach = new int[MAX_GOLD], trip = new int[MAX_GOLD];
+		private final int goldSets;
+		private final int states;
+		/**
+		 * The reward for all gold of the world.
+		 */
+		private final int maxReward;
+		private final int startSquare;
+		private final int agentSquare;
+		private final int startState;
+		private final boolean finished;
+
+		Search(final WorldModel world) {
+			final int[] bounds = { world.getAgentX(), world.getAgentY(), world.getAgentX(), world.getAgentY() };
+			world.forEachSquare((x, y, data) -> {
+				bounds[0] = Math.min(bounds[0], x);
+				bounds[1] = Math.min(bounds[1], y);
+				bounds[2] = Math.max(bounds[2], x);
+				bounds[3] = Math.max(bounds[3], y);
+			});
+			this.originX = bounds[0] - 1;
+			this.originY = bounds[1] - 1;
+			this.width = bounds[2] - bounds[0] + 3;
+			this.height = bounds[3] - bounds[1] + 3;
+			final int squares = Math.multiplyExact(this.width, this.height);
+			this.wall = new boolean[squares];
+			this.pit = new boolean[squares];
+			this.wumpus = new boolean[squares];
+			this.gold = new int[squares];
+			this.hits = new boolean[Math.multiplyExact(squares, 4)];
+			int golds = 0;
+			for (int s = 0; s < squares; s++) {
+				final int x = this.originX + s % this.width;
+				final int y = this.originY + s / this.width;
+				this.wall[s] = world.contains(x, y, WorldModel.WALL);
+				this.pit[s] = world.contains(x, y, WorldModel.PIT);
+				this.wumpus[s] = world.contains(x, y, WorldModel.WUMPUS);
+				this.gold[s] = world.contains(x, y, WorldModel.GOLD) ? golds++ : -1;
+				for (int d = 0; d < 4; d++) {
+					this.hits[s * 4 + d] = world.arrowHitsWumpus(x, y, d * 90);
+				}
+			}
+			if (golds > MAX_GOLD) {
+				throw new IllegalArgumentException("world has " + golds + " gold squares, at most " + MAX_GOLD
+						+ " are supported");
+			}
+			this.golds = golds;
+			this.goldSets = 1 << golds;
+			this.maxReward = GOLD_REWARD * golds;
+			try {
+				this.states = Math.multiplyExact(Math.multiplyExact(squares, 16), this.goldSets);
+			} catch (final ArithmeticException ex) {
+				throw new IllegalArgumentException("world of " + this.width + "x" + this.height + " squares and " + golds
+						+ " gold squares has too many states");
+			}
+			this.startSquare = square(world.getStartX(), world.getStartY());
+			this.home = distancesTo(this.startSquare);
+			this.goldSquare = new int[golds];
+			this.toGold = new int[golds][];
+			for (int s = 0; s < squares; s++) {
+				if (this.gold[s] >= 0) {
+					this.goldSquare[this.gold[s]] = s;
+					this.toGold[this.gold[s]] = distancesTo(s);
+				}
+			}
+			this.agentSquare = square(world.getAgentX(), world.getAgentY());
+			this.startState = state(this.agentSquare, world.getAgentOrientation() / 90, world.agentHasArrow() ? 1 : 0,
+					world.wumpusIsAlive() ? 1 : 0, 0);
+			this.finished = world.gameFinished();
+		}
+
+		/**
+		 * Breadth-first search from a square over the squares without wall or pit.
+		 */
+		private int[] distancesTo(final int target) {
+			final int[] distance = new int[this.wall.length];
+			Arrays.fill(distance, Integer.MAX_VALUE);
+			if (target < 0 || target >= distance.length) {
+				return distance;
+			}
+			final int[] queue = new int[distance.length];
+			int head = 0;
+			int tail = 0;
+			distance[target] = 0;
+			queue[tail++] = target;
+			while (head < tail) {
+				final int square = queue[head++];
+				final int x = square % this.width;
+				final int y = square / this.width;
+				for (int d = 0; d < 4; d++) {
+					final int nx = x + DX[d];
+					final int ny = y + DY[d];
+					if (nx < 0 || ny < 0 || nx >= this.width || ny >= this.height) {
+						continue;
+					}
+					final int next = ny * this.width + nx;
+					if (!this.wall[next] && !this.pit[next] && distance[next] == Integer.MAX_VALUE) {
+						distance[next] = distance[square] + 1;
+						queue[tail++] = next;
+					}
+				}
+			}
+			return distance;
+		}
+
+		private int square(final int x, final int y) {
+			return (y - this.originY) * this.width + (x - this.originX);
+		}
+
+		private int state(final int square, final int direction, final int arrow, final int alive, final int grabbed) {
+			return (((square * 4 + direction) * 2 + arrow) * 2 + alive) * this.goldSets + grabbed;
+		}
+
+		int run() {
+			if (this.finished) {
+				return 0;
+			}
+			final Costs dist = new Costs(this.states);
+			final LongHeap queue = new LongHeap();
+			int bestLoss = Integer.MAX_VALUE;
+			relax(dist, queue, this.startState, this.agentSquare, 0, 0);
+
+			while (!queue.isEmpty()) {
+				final long top = queue.pop();
+				final int estimate = (int) (top >>> 32);
+				if (estimate >= bestLoss) {
+					// estimates never overestimate, so nothing left can do better
+					break;
+				}
+				final int state = (int) top;
+				final int grabbed = state % this.goldSets;
+				int rest = state / this.goldSets;
+				final int alive = rest & 1;
+				rest >>= 1;
+				final int arrow = rest & 1;
+				rest >>= 1;
+				final int direction = rest & 3;
+				final int square = rest >> 2;
+				final int cost = estimate - bound(square, grabbed);
+				if (cost > dist.get(state)) {
+					continue;
+				}
+				final int missing = this.golds - Integer.bitCount(grabbed);
+
+				if (square == this.startSquare) {
+					bestLoss = Math.min(bestLoss, cost + ACTION_COST + GOLD_REWARD * missing);
+				}
+
+				// forward
+				final int x = square % this.width + DX[direction];
+				final int y = square / this.width + DY[direction];
+				if (x >= 0 && y >= 0 && x < this.width && y < this.height) {
+					final int next = y * this.width + x;
+					// as in TheGame, a wall bumps whatever else is on its square
+					if (!this.wall[next]) {
+						if (this.pit[next] || (this.wumpus[next] && alive == 1)) {
+							bestLoss = Math.min(bestLoss, cost + ACTION_COST + DEATH_PENALTY + GOLD_REWARD * missing);
+						} else {
+							relax(dist, queue, state(next, direction, arrow, alive, grabbed), next, grabbed,
+									cost + ACTION_COST);
+						}
+					}
+				}
+				// turns
+				relax(dist, queue, state(square, (direction + 1) & 3, arrow, alive, grabbed), square, grabbed,
+						cost + ACTION_COST);
+				relax(dist, queue, state(square, (direction + 3) & 3, arrow, alive, grabbed), square, grabbed,
+						cost + ACTION_COST);
+				// grab
+				final int g = this.gold[square];
+				if (g >= 0 && (grabbed & (1 << g)) == 0) {
+					final int more = grabbed | (1 << g);
+					relax(dist, queue, state(square, direction, arrow, alive, more), square, more, cost + ACTION_COST);
+				}
+				// shoot
+				if (arrow == 1) {
+					final int survives = (alive == 1 && !this.hits[square * 4 + direction]) ? 1 : 0;
+					relax(dist, queue, state(square, direction, 0, survives, grabbed), square, grabbed,
+							cost + SHOT_COST);
+				}
+			}
+			return (bestLoss == Integer.MAX_VALUE) ? Integer.MIN_VALUE : this.maxReward - bestLoss;
+		}
+
+		/**
+		 * Returns a lower bound of the loss still to come from a square, with the
+		 * given gold grabbed. If the agent grabs k more gold and climbs out, it
+		 * walks at least the k-th shortest trip from the square to a gold and on
+		 * to the start; if it grabs k more gold and dies, at least the distance
+		 * to the k-th nearest gold. Gold not grabbed costs its reward.
+		 */
+		private int bound(final int square, final int grabbed) {
+			int missing = 0;
+			for (int j = 0; j < this.golds; j++) {
+				if ((grabbed & (1 << j)) == 0) {
+					final int reach = this.toGold[j][square];
+					this.reach[missing] = reach;
+					this.trip[missing] = plus(reach, this.home[this.goldSquare[j]]);
+					missing++;
+				}
+			}
+			Arrays.sort(this.reach, 0, missing);
+			Arrays.sort(this.trip, 0, missing);
+			// climb out or die without grabbing more
+			int bound = plus(this.home[square], ACTION_COST + GOLD_REWARD * missing);
+			bound = Math.min(bound, ACTION_COST + DEATH_PENALTY + GOLD_REWARD * missing);
+			for (int k = 1; k <= missing; k++) {
+				final int rest = k * ACTION_COST + ACTION_COST + GOLD_REWARD * (missing - k);
+				bound = Math.min(bound, plus(this.trip[k - 1], rest));
+				bound = Math.min(bound, plus(this.reach[k - 1], rest + DEATH_PENALTY));
+			}
+			return bound;
+		}
+
+		private static int plus(final int distance, final int cost) {
+			return (distance == Integer.MAX_VALUE) ? Integer.MAX_VALUE : distance + cost;
+		}
+
+		/**
+		 * Records cost as the cost of state if it is lower than the known one,
+		 * and queues the state by its cost plus {@link #bound(int, int)}.
+		 */
+		private void relax(final Costs dist, final LongHeap queue, final int state, final int square,
+				final int grabbed, final int cost) {
+			if (cost < dist.get(state)) {
+				dist.put(state, cost);
+				queue.push(((long) (cost + bound(square, grabbed)) << 32) | state);
+			}
+		}
+	}
+
+	/**
+	 * The least cost found so far per state, Integer.MAX_VALUE for states not
+	 * reached yet. An array if there are at most {@link #ARRAY_STATES} states,
+	 * else a hash table with open addressing that holds the reached states only.
+	 */
+	private static final class Costs {
+		private static final int EMPTY = -1;
+
+		private final int[] array;
+		private int[] keys;
+		private int[] values;
+		private int size = 0;
+
+		Costs(final int states) {
+			if (states <= ARRAY_STATES) {
+				this.array = new int[states];
+				Arrays.fill(this.array, Integer.MAX_VALUE);
+			} else {
+				this.array = null;
+				this.keys = new int[1 << 12];
+				this.values = new int[1 << 12];
+				Arrays.fill(this.keys, EMPTY);
+			}
+		}
+
+		int get(final int state) {
+			if (this.array != null) {
+				return this.array[state];
+			}
+			final int mask = this.keys.length - 1;
+			for (int i = slot(state, mask);; i = (i + 1) & mask) {
+				if (this.keys[i] == state) {
+					return this.values[i];
+				}
+				if (this.keys[i] == EMPTY) {
+					return Integer.MAX_VALUE;
+				}
+			}
+		}
+
+		void put(final int state, final int cost) {
+			if (this.array != null) {
+				this.array[state] = cost;
+				return;
+			}
+			if (2 * (this.size + 1) > this.keys.length) {
+				if (this.size >= MAX_REACHED_STATES) {
+					throw new IllegalArgumentException(
+							"world is too large for the oracle: more than " + MAX_REACHED_STATES + " states reached");
+				}
+				grow();
+			}
+			insert(state, cost);
+		}
+
+		private void insert(final int state, final int cost) {
+			final int mask = this.keys.length - 1;
+			int i = slot(state, mask);
+			while (this.keys[i] != EMPTY && this.keys[i] != state) {
+				i = (i + 1) & mask;
+			}
+			if (this.keys[i] == EMPTY) {
+				this.keys[i] = state;
+				this.size++;
+			}
+			this.values[i] = cost;
+		}
+
+		private void grow() {
+			final int[] oldKeys = this.keys;
+			final int[] oldValues = this.values;
+			this.keys = new int[oldKeys.length * 2];
+			this.values = new int[oldKeys.length * 2];
+			Arrays.fill(this.keys, EMPTY);
+			this.size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					insert(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int slot(final int state, final int mask) {
+			final int h = state * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+	}
+
+	/**
+	 * Minimal binary heap of longs, smallest first.
+	 */
+	private static final class LongHeap {
+		private long[] heap = new long[256];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return this.size == 0;
+		}
+
+		void push(final long value) {
+			if (this.size == this.heap.length) {
+				this.heap = Arrays.copyOf(this.heap, this.size * 2);
+			}
+			int i = this.size++;
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if (this.heap[parent] <= value) {
+					break;
+				}
+				this.heap[i] = this.heap[parent];
+				i = parent;
+			}
+			this.heap[i] = value;
+		}
+
+		long pop() {
+			final long result = this.heap[0];
+			final long last = this.heap[--this.size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if (child + 1 < this.size && this.heap[child + 1] < this.heap[child]) {
+					child++;
+				}
+				if (this.heap[child] >= last) {
+					break;
+				}
+				this.heap[i] = this.heap[child];
+				i = child;
+			}
+			this.heap[i] = last;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package wumpusenv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import eis.iilang.EnvironmentState;
+
+/**
+ * Simulator is the kernel of a Wumpus game: a world model (see WorldModel),
+ * the rules of the game (see TheGame), the agent's body (see WumpusAgent) and
+ * the master clock. It does not use any AWT class, so it can be created and
+ * stepped on machines without a display. The {@link Runner} shows a Simulator
+ * in the GUI; the EIS interface uses one directly when the GUI is off.
+ * <p>
+ * The whole state of a game can be taken with {@link #checkpoint()} and put
+ * back with {@link #restore(ByteBuffer)}, also in another JVM.
+ * </p>
+ *
+ * @see WorldModel
+ * @see WumpusAgent
+ * @see TheGame
+ */
+public class Simulator {
+	static final int CHECKPOINT_MAGIC = 0x57435031; // "WCP1"
+
+	private WorldModel model;
+	private TheGame game = new TheGame();
+	private final WumpusAgent agent = new WumpusAgent();
+	private final WumpusObserver observer;
+	// MASTER CLOCK
+	private int time = 0;
+	/**
+	 * Records running or paused state. In paused state no actions can be done, and
+	 * no percepts are provided.
+	 */
+	private boolean paused = false;
+	/**
+	 * Records the steps, or null.
+	 */
+	private TraceRecorder recorder = null;
+	/**
+	 * With auto reset, a finished game is put back into the state of
+	 * {@link #initial} at once, and the observer is not told.
+	 */
+	private boolean autoReset = false;
+	private WorldModel initial = null;
+	/**
+	 * Whether the last step finished a game that was then reset, and the score
+	 * and reward of that game.
+	 */
+	private boolean episodeEnded = false;
+	private int endedScore = 0;
+	private int endedReward = 0;
+
+	/**
+	 * Creates a simulator for an empty world.
+	 *
+	 * @param observer is told about state changes of the game, may be null.
+	 */
+	public Simulator(final WumpusObserver observer) {
+		this.observer = observer;
+		this.model = new WorldModel();
+	}
+
+	public WorldModel getModel() {
+		return this.model;
+	}
+
+	public void setModel(final WorldModel model) {
+		this.model = model;
+		beginEpisode();
+	}
+
+	/**
+	 * Turns auto reset on or off. With auto reset, a step that finishes the game
+	 * puts the world back into the state it had at the start of the game, the
+	 * score to 0 and the time to 0, so the next step starts the next game. The
+	 * observer is then not told that the entity is gone; see
+	 * {@link #episodeEnded()} instead.
+	 *
+	 * @param autoReset true to turn auto reset on.
+	 */
+	public void setAutoReset(final boolean autoReset) {
+		this.autoReset = autoReset;
+		beginEpisode();
+	}
+
+	/**
+	 * Returns whether the last step finished a game that was then reset
+	 * automatically. {@link #getGameScore()} and {@link #getReward()} are those
+	 * of the finished game until the next step.
+	 *
+	 * @return {@code true} if the last step ended a game.
+	 */
+	public boolean episodeEnded() {
+		return this.episodeEnded;
+	}
+
+	/**
+	 * Records the steps of this simulator from now on; each reset and each new
+	 * world starts a new episode of the trace. The recorder is not closed by the
+	 * simulator.
+	 *
+	 * @param recorder the recorder, or null to stop recording.
+	 */
+	public void setRecorder(final TraceRecorder recorder) {
+		this.recorder = recorder;
+		recordEpisode();
+	}
+
+	/**
+	 * Returns the Wumpus entity.
+	 *
+	 * @return Wumpus agent (controllable entity).
+	 */
+	public WumpusAgent getAgent() {
+		return this.agent;
+	}
+
+	public int getTime() {
+		return this.time;
+	}
+
+	public WumpusWorldPercept getCurrentPercept() {
+		return this.game.getPercept(this.model);
+	}
+
+	/**
+	 * Returns true if the game is running, i.e. the game has not yet finished
+	 * (agent climbed out or died) and is not paused, otherwise false.
+	 *
+	 * @return {@code true} if the game is running; {@code false} otherwise.
+	 */
+	public boolean gameRunning() {
+		return !this.model.gameFinished() && !this.paused;
+	}
+
+	/**
+	 * Puts the game into paused or non-paused (started) mode.
+	 *
+	 * @param value mode to put the game in: true is paused, false is started.
+	 */
+	public void setPaused(final boolean value) {
+		this.paused = value;
+		notifyStateChange(this.paused ? EnvironmentState.PAUSED : EnvironmentState.RUNNING);
+	}
+
+	/**
+	 * Resets score, time and the initial state of the world.
+	 */
+	public void reset() {
+		this.game.reset();
+		this.model.reset();
+		this.time = 0;
+		this.paused = false;
+		beginEpisode();
+		// notify environment listeners. HACK see #1539
+		notifyStateChange(EnvironmentState.PAUSED);
+	}
+
+	/**
+	 * Same as {@link #nextStep(int)}, for an action string.
+	 *
+	 * @param pAction action as understood by {@link WumpusAgent#action(String)}.
+	 */
+	public boolean nextStep(final String pAction) {
+		return nextStep(WumpusAgent.toAction(pAction));
+	}
+
+	/**
+	 * Does one perception-action cycle step: the agent does pAction, and the next
+	 * percept is computed. When this finishes the game, the observer is told
+	 * that the entity is gone.
+	 *
+	 * @param pAction action number of {@link TheGame}.
+	 * @return {@code false} if the game had already finished, so nothing was
+	 *         done; {@code true} otherwise.
+	 */
+	public boolean nextStep(final int pAction) {
+		// First, check whether game has finished already.
+		if (this.model.gameFinished()) {
+			return false;
+		}
+
+		this.time++;
+		this.episodeEnded = false;
+
+		// Attempt to execute action pAction.
+		final int lActionNr = this.agent.action(pAction);
+		this.game.Action(lActionNr, this.model);
+		if (this.recorder != null) {
+			final WumpusWorldPercept percept = getCurrentPercept();
+			this.recorder.step(lActionNr, (percept == null) ? 0 : percept.getMask(), getReward(), this.time);
+		}
+
+		// Check whether WE'RE FINISHED
+		if (this.model.gameFinished() && this.autoReset) {
+			// the initial state is kept, so the next game can be restored from it too
+			this.episodeEnded = true;
+			this.endedScore = this.game.getScore();
+			this.endedReward = this.game.getReward();
+			this.game.reset();
+			this.model.restore(this.initial);
+			this.time = 0;
+			recordEpisode();
+		} else if (this.model.gameFinished()) {
+			notifyStateChange(EnvironmentState.INITIALIZING);
+			if (this.observer != null) {
+				this.observer.unregisterEntity();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Does the actions of a plan one after another, in one call, without
+	 * percepts being asked in between. The plan stops early when the game
+	 * finishes (also with auto reset), or after the first step whose percept has
+	 * one of the percepts in pStopOn.
+	 *
+	 * @param pActions action numbers of {@link TheGame}.
+	 * @param pStopOn  mask of percepts to stop on, e.g.
+	 *                 {@code WumpusWorldPercept.BUMP | WumpusWorldPercept.GLITTER};
+	 *                 0 to run the whole plan.
+	 * @param pPercepts receives per step done the percept mask after the step, 0
+	 *                  if the step finished the game. At least as long as
+	 *                  pActions.
+	 * @param pRewards  receives per step done the reward of the step. At least as
+	 *                  long as pActions.
+	 * @return the number of steps done.
+	 */
+	public int nextSteps(final int[] pActions, final int pStopOn, final int[] pPercepts, final int[] pRewards) {
+		int n = 0;
+		while (n < pActions.length && nextStep(pActions[n])) {
+			final WumpusWorldPercept percept = this.episodeEnded ? null : getCurrentPercept();
+			pPercepts[n] = (percept == null) ? 0 : percept.getMask();
+			pRewards[n] = getReward();
+			n++;
+			if (percept == null || (percept.getMask() & pStopOn) != 0) {
+				break;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Writes the state of the game to a buffer: world, score, percept, time and
+	 * auto reset, and with auto reset the world the game started from. The
+	 * buffer holds the int {@link #CHECKPOINT_MAGIC} and then the state, in a
+	 * compact binary format; the worlds are in the format of
+	 * {@link WorldModel#saveTo(java.io.File)}. Whether the game is paused, the
+	 * recorder and the observer are not part of the state.
+	 *
+	 * @return a new buffer, from position 0 to its limit.
+	 */
+	public ByteBuffer checkpoint() {
+		final ChannelWriter output = new ChannelWriter(1024);
+		try {
+			output.writeInt(CHECKPOINT_MAGIC);
+			output.writeVarint(this.model.getStorage().ordinal());
+			output.writeInt(this.time);
+			output.writeInt(this.agent.getTime());
+			output.writeVarint((this.autoReset ? 1 : 0) | (this.episodeEnded ? 2 : 0));
+			output.writeInt(this.endedScore);
+			output.writeInt(this.endedReward);
+			this.game.writeTo(output);
+			this.model.writeStateTo(output);
+			if (this.autoReset) {
+				this.initial.writeStateTo(output);
+			}
+		} catch (final IOException ex) {
+			// memory is not a channel, it does not fail
+			throw new IllegalStateException(ex);
+		}
+		return output.toByteBuffer();
+	}
+
+	/**
+	 * Puts the game back into the state of a {@link #checkpoint()}. The
+	 * observer is not told, and the recorder, if any, starts a new episode.
+	 * <p>
+	 * Auto reset stays as set with {@link #setAutoReset(boolean)}, whatever the
+	 * checkpoint says. With auto reset on, the next game starts from the world
+	 * the checkpoint's game started from if the checkpoint has it, else from
+	 * the restored world.
+	 * </p>
+	 *
+	 * @param checkpoint the checkpoint, read from its position to its limit. The
+	 *                   position is moved to the end of the checkpoint.
+	 * @throws IOException if the buffer does not hold a checkpoint.
+	 */
+	public void restore(final ByteBuffer checkpoint) throws IOException {
+		final ChannelReader input = new ChannelReader(checkpoint);
+		if (input.readInt() != CHECKPOINT_MAGIC) {
+			throw new IOException("not a checkpoint");
+		}
+		final WorldModel.Storage[] storages = WorldModel.Storage.values();
+		final int storage = input.readVarint();
+		if (storage < 0 || storage >= storages.length) {
+			throw new IOException("checkpoint has unknown storage " + storage);
+		}
+		final int time = input.readInt();
+		final int agentTime = input.readInt();
+		final int flags = input.readVarint();
+		final int endedScore = input.readInt();
+		final int endedReward = input.readInt();
+		final TheGame game = new TheGame();
+		game.readFrom(input);
+		final WorldModel model = WorldModel.readStateFrom(input, storages[storage]);
+		final boolean savedAutoReset = (flags & 1) != 0;
+		final WorldModel savedInitial = savedAutoReset ? WorldModel.readStateFrom(input, storages[storage]) : null;
+
+		// all read, so a damaged checkpoint leaves the game as it was
+		this.model = model;
+		if (this.autoReset) {
+			this.initial = (savedInitial != null) ? savedInitial : model.fork();
+		} else {
+			this.initial = null;
+		}
+		this.time = time;
+		this.agent.setTime(agentTime);
+		this.episodeEnded = this.autoReset && (flags & 2) != 0;
+		this.endedScore = endedScore;
+		this.endedReward = endedReward;
+		this.game = game;
+		recordEpisode();
+	}
+
+	public int getGameScore() {
+		return this.episodeEnded ? this.endedScore : this.game.getScore();
+	}
+
+	public int getReward() {
+		return this.episodeEnded ? this.endedReward : this.game.getReward();
+	}
+
+	private void beginEpisode() {
+		this.episodeEnded = false;
+		this.initial = this.autoReset ? this.model.fork() : null;
+		recordEpisode();
+	}
+
+	private void recordEpisode() {
+		if (this.recorder != null) {
+			this.recorder.beginEpisode(this.model, this.time);
+		}
+	}
+
+	private void notifyStateChange(final EnvironmentState state) {
+		if (this.observer != null) {
+			this.observer.notifyStateChange(state);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package wumpusenv;
+
+/**
+ * Callback used to walk over the squares stored in a {@link WorldModel}.
+ */
+interface SquareVisitor {
+	/**
+	 * Called for a single square.
+	 *
+	 * @param x    x coordinate of the square.
+	 * @param y    y coordinate of the square.
+	 * @param data the items on the square, see the constants in WorldModel.
+	 */
+	void visit(int x, int y, int data);
+}
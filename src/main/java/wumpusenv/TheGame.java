@@ -1,6 +1,6 @@
 package wumpusenv;
 
-import java.awt.Point;
+import java.io.IOException;
 
 /**
  * Handles the rules of the game but it does not own a board (the gridworld). If
@@ -33,9 +33,10 @@ public class TheGame {
 	public static final int NONE = 6;
 
 	/**
-	 * Percept after the last action has been performed.
+	 * Percept after the last action has been performed. Percepts are immutable,
+	 * so this is only ever replaced, never changed.
 	 */
-	private final WumpusWorldPercept fPercept = new WumpusWorldPercept();
+	private WumpusWorldPercept fPercept = WumpusWorldPercept.valueOf(0);
 	private int lastscore;
 	private int score;
 
@@ -43,10 +44,33 @@ public class TheGame {
 		reset();
 	}
 
+	/**
+	 * Puts the game back in the state of a new game, before the first action.
+	 */
 	public void reset() {
+		this.fPercept = WumpusWorldPercept.valueOf(0);
+		this.lastscore = 0;
 		this.score = 0;
 	}
 
+	/**
+	 * Writes score, last score and percept, see {@link Simulator#checkpoint()}.
+	 */
+	void writeTo(final ChannelWriter output) throws IOException {
+		output.writeInt(this.score);
+		output.writeInt(this.lastscore);
+		output.writeVarint(this.fPercept.getMask());
+	}
+
+	/**
+	 * Puts back what {@link #writeTo(ChannelWriter)} wrote.
+	 */
+	void readFrom(final ChannelReader input) throws IOException {
+		this.score = input.readInt();
+		this.lastscore = input.readInt();
+		this.fPercept = WumpusWorldPercept.valueOf(input.readVarint());
+	}
+
 	public int getScore() {
 		return this.score;
 	}
@@ -79,20 +103,28 @@ public class TheGame {
 	 * you need to call calcPercepts() to get the last percept. LastPercept is reset
 	 * by an action, because part of the percepts is caused by actions e.g. hitting
 	 * a wall gives a "bump" percept. see calcPercepts(WorldModel).
+	 *
+	 * Locations are handled as plain ints, so doing an action does not allocate
+	 * anything. The only exception is the first SHOOT in a world, which builds
+	 * the arrow index of that world.
 	 */
 
 	public void Action(final int pAction, final WorldModel pWorld) {
-		this.fPercept.reset();
 		// System.out.println("Agent asked action "+action);
 
 		// If the agent has finished, the agent cannot do anything anymore.
 		if (pWorld.gameFinished()) {
+			this.fPercept = WumpusWorldPercept.valueOf(0);
 			return;
 		}
 
 		final int lOrientation = pWorld.getAgentOrientation();
-		final Point lAgent = pWorld.getAgentLocation();
-		final Point lStepForward = locationAhead(lOrientation, lAgent);
+		final int lAgentX = pWorld.getAgentX();
+		final int lAgentY = pWorld.getAgentY();
+		final int lDx = stepX(lOrientation);
+		final int lDy = stepY(lOrientation);
+		// the percepts caused by the action itself
+		int lPercept = 0;
 
 		// save the current score before updating
 		this.lastscore = this.score;
@@ -106,39 +138,36 @@ public class TheGame {
 		case NO_ACTION:
 			break;
 		case FORWARD:
-			if (pWorld.contains(lStepForward, WorldModel.WALL)) {
-				this.fPercept.setBump(true);
+			if (pWorld.contains(lAgentX + lDx, lAgentY + lDy, WorldModel.WALL)) {
+				lPercept |= WumpusWorldPercept.BUMP;
 			} else {
-				pWorld.setAgentLocation(lStepForward);
+				pWorld.setAgentLocation(lAgentX + lDx, lAgentY + lDy);
 			}
 			break;
 		case GRAB:
-			if (pWorld.contains(lAgent, WorldModel.GOLD)) {
+			if (pWorld.contains(lAgentX, lAgentY, WorldModel.GOLD)) {
 				pWorld.setAgentHasGold(true);
 				this.score = this.score + 1000;
-				pWorld.removeItem(lAgent, WorldModel.GOLD);
+				pWorld.removeItem(lAgentX, lAgentY, WorldModel.GOLD);
 			}
 			break;
 		case SHOOT:
 			if (pWorld.agentHasArrow()) {
 				this.score -= 10;
-				Point p = lStepForward;
-				boolean wumpusHit = false;
-				while (!pWorld.contains(p, WorldModel.WALL) && !wumpusHit && pWorld.wumpusIsAlive()) {
-					wumpusHit = pWorld.contains(p, WorldModel.WUMPUS);
-					p = locationAhead(lOrientation, p);
-				}
+				final boolean wumpusHit = pWorld.wumpusIsAlive()
+						&& pWorld.arrowHitsWumpus(lAgentX, lAgentY, lOrientation);
 				pWorld.setAgentHasArrow(false);
 				if (wumpusHit) {
 					pWorld.setWumpusIsAlive(false);
-					this.fPercept.setScream(true);
+					lPercept |= WumpusWorldPercept.SCREAM;
 				}
 			}
 			break;
 		case CLIMB:
-			if (lAgent.equals(pWorld.getStartLocation())) {
+			if (pWorld.agentAtStart()) {
 				System.out.println("Agent succesfully climbed out Wumpus World.");
 				pWorld.setAgentClimbedOut();
+				this.fPercept = WumpusWorldPercept.valueOf(0);
 				return;
 			}
 			break;
@@ -154,48 +183,48 @@ public class TheGame {
 		if (pWorld.agentKilled()) {
 			this.score = this.score - 1000; // just died...
 		}
-		calcPercepts(pWorld);
+		this.fPercept = WumpusWorldPercept.valueOf(lPercept | calcPercepts(pWorld));
 	}
 
 	/**
-	 * Compute the latest percept. This code is still messy, following original
-	 * code. Probably it would be neater to put this stuff in Sense(). IMPORTANT
+	 * Compute the latest percept. The world keeps the breeze and smell next to
+	 * pits and wumpus on every square, so the part of the percept that comes from
+	 * the squares around the agent is read from the agent's own square. IMPORTANT
 	 * NOTE: you smell stench
 	 *
-	 * @return the latest percept, or null if the game has finished.
+	 * @return mask of the stench, breeze and glitter on the agent's square.
 	 */
-	private void calcPercepts(final WorldModel pWorld) {
-		final Point agent = pWorld.getAgentLocation();
-
-		boolean stench = false;
-		boolean breeze = false;
-		for (int i = 0; i <= 270; i += 90) {
-			stench |= pWorld.contains(locationAhead(i, agent), WorldModel.WUMPUS);
-			breeze |= pWorld.contains(locationAhead(i, agent), WorldModel.PIT);
-		}
-		this.fPercept.setStench(stench);
-		this.fPercept.setBreeze(breeze);
+	private static int calcPercepts(final WorldModel pWorld) {
+		return pWorld.getPerceptMask(pWorld.getAgentX(), pWorld.getAgentY());
+	}
 
-		if (pWorld.contains(agent, WorldModel.GOLD)) {
-			this.fPercept.setGlitter(true);
+	/**
+	 * stepX and stepY give the square ahead: facing pOrientation from (x,y), the
+	 * square ahead is (x + stepX, y + stepY). Orientations other than 0, 90, 180
+	 * and 270 do not move.
+	 */
+	static int stepX(final int pOrientation) {
+		switch (pOrientation) {
+		case 0:
+			return 1;
+		case 180:
+			return -1;
+		default:
+			return 0;
 		}
 	}
 
 	/**
-	 * locationAhead is a help function that might be better placed in WorldModel.
+	 * See {@link #stepX(int)}.
 	 */
-	private static Point locationAhead(final int pOrientation, final Point p) {
+	static int stepY(final int pOrientation) {
 		switch (pOrientation) {
-		case 0:
-			return new Point(p.x + 1, p.y);
 		case 90:
-			return new Point(p.x, p.y + 1);
-		case 180:
-			return new Point(p.x - 1, p.y);
+			return 1;
 		case 270:
-			return new Point(p.x, p.y - 1);
+			return -1;
 		default:
-			return p;
+			return 0;
 		}
 	}
 }
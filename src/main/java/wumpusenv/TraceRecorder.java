@@ -0,0 +1,196 @@
+package wumpusenv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * TraceRecorder writes the steps of games to a compact binary stream, to be
+ * read back by {@link TraceReplayer}. Attach it to a game with
+ * {@link Simulator#setRecorder(TraceRecorder)}.
+ * <p>
+ * Recording a step only encodes it into a memory buffer. Full buffers are
+ * handed to a background thread that writes them to the stream, so the game
+ * never waits for I/O. An I/O error of that thread is thrown by
+ * {@link #close()}.
+ * </p>
+ * <p>
+ * The stream starts with the int {@link #MAGIC}. Then come episodes and steps:
+ * <ul>
+ * <li>an episode is the byte 0, the {@link WorldModel#getStateHash() state
+ * hash} of the world at its start as a long, and the time at its start as a
+ * varint;</li>
+ * <li>a step is one byte {@code percept << 3 | action}, then the reward and the
+ * increase of the time as zigzag varints. A step with an action outside 1..7
+ * starts with the byte {@link #ESCAPE}, followed by action and percept as
+ * zigzag varints.</li>
+ * </ul>
+ * A usual step therefore takes 3 bytes.
+ * </p>
+ */
+public final class TraceRecorder implements Closeable {
+	static final int MAGIC = 0x57545231; // "WTR1"
+	static final int EPISODE = 0x00;
+	static final int ESCAPE = 0x08;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * More than the longest record: tag, long, and three 5-byte varints.
+	 */
+	private static final int MAX_RECORD = 32;
+	/**
+	 * Tells the writer thread to stop.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final OutputStream out;
+	private final BlockingQueue<ByteBuffer> full = new LinkedBlockingQueue<>();
+	private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final Thread writer;
+	private volatile IOException failure = null;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private int lastTime = 0;
+	private boolean closed = false;
+
+	/**
+	 * Creates a recorder and starts its writer thread.
+	 *
+	 * @param out the stream to write to. Closed by {@link #close()}.
+	 */
+	public TraceRecorder(final OutputStream out) {
+		this.out = out;
+		this.buffer.putInt(MAGIC);
+		this.writer = new Thread(this::write, "trace writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Starts a new episode.
+	 *
+	 * @param world the world at the start of the episode.
+	 * @param time  the time at the start of the episode.
+	 */
+	public void beginEpisode(final WorldModel world, final int time) {
+		reserve();
+		this.buffer.put((byte) EPISODE);
+		this.buffer.putLong(world.getStateHash());
+		putVarint(time);
+		this.lastTime = time;
+	}
+
+	/**
+	 * Records a step.
+	 *
+	 * @param action  action number of {@link TheGame}.
+	 * @param percept percept mask after the action, see
+	 *                {@link WumpusWorldPercept#getMask()}.
+	 * @param reward  reward of the action.
+	 * @param time    time after the action.
+	 */
+	public void step(final int action, final int percept, final int reward, final int time) {
+		reserve();
+		if (action >= 1 && action <= 7 && (percept & ~0x1F) == 0) {
+			this.buffer.put((byte) (percept << 3 | action));
+		} else {
+			this.buffer.put((byte) ESCAPE);
+			putVarint(zigzag(action));
+			putVarint(zigzag(percept));
+		}
+		putVarint(zigzag(reward));
+		putVarint(zigzag(time - this.lastTime));
+		this.lastTime = time;
+	}
+
+	/**
+	 * Writes what has been recorded and closes the stream.
+	 *
+	 * @throws IOException if writing failed, now or earlier in the background.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		handOver();
+		this.full.add(END);
+		try {
+			this.writer.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing the trace", e);
+		} finally {
+			this.out.close();
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Makes room for one record, handing over the buffer if it is almost full.
+	 */
+	private void reserve() {
+		if (this.closed) {
+			throw new IllegalStateException("trace recorder is closed");
+		}
+		if (this.buffer.remaining() < MAX_RECORD) {
+			handOver();
+		}
+	}
+
+	private void handOver() {
+		this.buffer.flip();
+		this.full.add(this.buffer);
+		final ByteBuffer next = this.free.poll();
+		this.buffer = (next == null) ? ByteBuffer.allocate(BUFFER_SIZE) : next;
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void write() {
+		try {
+			while (true) {
+				final ByteBuffer next = this.full.take();
+				if (next == END) {
+					break;
+				}
+				if (this.failure == null) {
+					try {
+						this.out.write(next.array(), 0, next.limit());
+					} catch (final IOException e) {
+						this.failure = e;
+					}
+				}
+				next.clear();
+				this.free.add(next);
+			}
+			if (this.failure == null) {
+				this.out.flush();
+			}
+		} catch (final IOException e) {
+			this.failure = e;
+		} catch (final InterruptedException e) {
+			this.failure = new IOException("trace writer interrupted", e);
+		}
+	}
+
+	private void putVarint(int value) {
+		while ((value & ~0x7F) != 0) {
+			this.buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	private static int zigzag(final int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+}
@@ -0,0 +1,147 @@
+package wumpusenv;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TraceReplayer plays a trace written by {@link TraceRecorder} again, with the
+ * rules of {@link TheGame} on a fork of the world, as fast as it can be read.
+ * Every step must give the recorded percept and reward, and take one tick of
+ * time; the first one that does not is reported with a
+ * {@link WumpusException}.
+ * <p>
+ * The world of each episode is found by its state hash: an episode can start
+ * from one of the given worlds as it is, or as it is after
+ * {@link WorldModel#reset()}.
+ * </p>
+ */
+public final class TraceReplayer {
+	private TraceReplayer() {
+	}
+
+	/**
+	 * Replays a trace.
+	 *
+	 * @param in     the trace. Not closed.
+	 * @param worlds the worlds the trace may have been recorded on. They are not
+	 *               changed.
+	 * @return the number of steps replayed.
+	 * @throws IOException     if the trace cannot be read.
+	 * @throws WumpusException if the trace is not a trace, was recorded on
+	 *                         another world, or a step does not give the
+	 *                         recorded outcome.
+	 */
+	public static long replay(final InputStream in, final WorldModel... worlds) throws IOException, WumpusException {
+		final Map<Long, WorldModel> starts = new HashMap<>();
+		for (final WorldModel world : worlds) {
+			final WorldModel reset = world.fork();
+			reset.reset();
+			starts.putIfAbsent(world.getStateHash(), world);
+			starts.putIfAbsent(reset.getStateHash(), reset);
+		}
+
+		final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != TraceRecorder.MAGIC) {
+			throw new WumpusException("not a trace");
+		}
+		long steps = 0;
+		int episodes = 0;
+		int step = 0;
+		WorldModel world = null;
+		TheGame game = null;
+		int time = 0;
+
+		int tag;
+		while ((tag = data.read()) != -1) {
+			if (tag == TraceRecorder.EPISODE) {
+				final long hash = data.readLong();
+				final WorldModel start = starts.get(hash);
+				if (start == null) {
+					throw new WumpusException("episode " + (episodes + 1) + " was recorded on an unknown world");
+				}
+				world = start.fork();
+				game = new TheGame();
+				time = readVarint(data);
+				episodes++;
+				step = 0;
+				continue;
+			}
+			if (world == null) {
+				throw new WumpusException("trace has a step before its first episode");
+			}
+			final int action, percept;
+			if (tag == TraceRecorder.ESCAPE) {
+				action = unzigzag(readVarint(data));
+				percept = unzigzag(readVarint(data));
+			} else {
+				action = tag & 0x07;
+				percept = tag >>> 3;
+			}
+			final int reward = unzigzag(readVarint(data));
+			final int elapsed = unzigzag(readVarint(data));
+			step++;
+			if (elapsed != 1) {
+				throw mismatch(episodes, step, "time went from " + time + " to " + (time + elapsed));
+			}
+			time += elapsed;
+
+			if (world.gameFinished()) {
+				throw mismatch(episodes, step, "game had already finished");
+			}
+			game.Action(action, world);
+			final WumpusWorldPercept replayed = game.getPercept(world);
+			final int replayedMask = (replayed == null) ? 0 : replayed.getMask();
+			if (replayedMask != percept) {
+				throw mismatch(episodes, step, "percept " + WumpusWorldPercept.valueOf(percept) + " was recorded, "
+						+ WumpusWorldPercept.valueOf(replayedMask) + " replayed");
+			}
+			if (game.getReward() != reward) {
+				throw mismatch(episodes, step, "reward " + reward + " was recorded, " + game.getReward() + " replayed");
+			}
+			steps++;
+		}
+		return steps;
+	}
+
+	/**
+	 * Replays a trace file on a world file, and prints the number of steps.
+	 *
+	 * @param args the .wld file and the trace file.
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: TraceReplayer <world.wld> <trace>");
+			return;
+		}
+		final WorldModel world = WorldModel.load(new File(args[0]), WorldModel.Storage.DENSE);
+		try (InputStream in = new FileInputStream(args[1])) {
+			System.out.println(replay(in, world) + " steps replayed");
+		}
+	}
+
+	private static WumpusException mismatch(final int episode, final int step, final String message) {
+		return new WumpusException("episode " + episode + ", step " + step + ": " + message);
+	}
+
+	private static int readVarint(final DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("varint too long");
+	}
+
+	private static int unzigzag(final int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
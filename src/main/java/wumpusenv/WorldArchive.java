@@ -0,0 +1,219 @@
+package wumpusenv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WorldArchive is a read-only collection of worlds packed in one file, for
+ * corpora that are too large to keep as one .wld file per world. The file is
+ * mapped into memory, so opening an archive reads only its index, and a world
+ * is decoded straight from the mapped pages when it is asked for. An archive
+ * can be used from many threads at once.
+ * <p>
+ * Build an archive from a directory of .wld files with
+ * {@link #build(File, File)}, or from the command line with {@link #main}.
+ * Every world has an index (its place in the archive, sorted by file name) and
+ * an ID (the file name without ".wld").
+ * </p>
+ * <p>
+ * The file holds the int {@link #MAGIC}, the number of worlds (int) and the
+ * offset of the index (long); then the worlds, each in the format of
+ * {@link WorldModel#saveTo(File)} without header; then the index: per world
+ * its offset (long) and length (int); and last per world its ID.
+ * </p>
+ */
+public final class WorldArchive {
+	static final int MAGIC = 0x57574131; // "WWA1"
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+	private static final int ENTRY_SIZE = 8 + 4;
+
+	private final ByteBuffer data;
+	private final WorldModel.Storage storage;
+	private final int indexOffset;
+	private final String[] ids;
+	private final Map<String, Integer> byId;
+
+	/**
+	 * Opens an archive. The worlds get {@link WorldModel.Storage#DENSE} storage.
+	 *
+	 * @param file the archive.
+	 * @throws IOException if the file cannot be read or is not an archive.
+	 */
+	public WorldArchive(final File file) throws IOException {
+		this(file, WorldModel.Storage.DENSE);
+	}
+
+	/**
+	 * See {@link #WorldArchive(File)}.
+	 *
+	 * @param storage how the squares of the worlds are stored.
+	 */
+	public WorldArchive(final File file, final WorldModel.Storage storage) throws IOException {
+		this.storage = storage;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is larger than 2 GB, split the corpus");
+			}
+			// the mapping stays valid after the channel is closed
+			this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (this.data.limit() < HEADER_SIZE || this.data.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a world archive");
+		}
+		final int count = this.data.getInt(4);
+		final long index = this.data.getLong(8);
+		if (count < 0 || index < HEADER_SIZE || index + (long) count * ENTRY_SIZE > this.data.limit()) {
+			throw new IOException(file + " has a broken index");
+		}
+		this.indexOffset = (int) index;
+		this.ids = new String[count];
+		this.byId = new HashMap<>(count * 2);
+		final ByteBuffer names = this.data.duplicate();
+		names.position(this.indexOffset + count * ENTRY_SIZE);
+		final ChannelReader reader = new ChannelReader(names);
+		for (int i = 0; i < count; i++) {
+			this.ids[i] = reader.readString();
+			this.byId.put(this.ids[i], i);
+		}
+	}
+
+	/**
+	 * @return the number of worlds in the archive.
+	 */
+	public int size() {
+		return this.ids.length;
+	}
+
+	/**
+	 * @return the ID of the world with the given index.
+	 */
+	public String getId(final int index) {
+		return this.ids[index];
+	}
+
+	/**
+	 * @return the index of the world with the given ID, or -1 if there is none.
+	 */
+	public int indexOf(final String id) {
+		final Integer index = this.byId.get(id);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * Decodes a world. Each call gives a new world, which the caller owns.
+	 *
+	 * @param index index of the world, 0 up to {@link #size()}.
+	 * @return the world, as saved.
+	 * @throws IOException if the world is damaged.
+	 */
+	public WorldModel get(final int index) throws IOException {
+		if (index < 0 || index >= this.ids.length) {
+			throw new IndexOutOfBoundsException("world " + index + " of " + this.ids.length);
+		}
+		final int entry = this.indexOffset + index * ENTRY_SIZE;
+		final long offset = this.data.getLong(entry);
+		final int length = this.data.getInt(entry + 8);
+		if (offset < HEADER_SIZE || length < 0 || offset + length > this.indexOffset) {
+			throw new IOException("world " + index + " has a broken index entry");
+		}
+		final ByteBuffer world = this.data.duplicate();
+		world.limit((int) offset + length);
+		world.position((int) offset);
+		return WorldModel.readFrom(new ChannelReader(world), this.storage);
+	}
+
+	/**
+	 * Decodes the world with the given ID, see {@link #get(int)}.
+	 *
+	 * @throws IllegalArgumentException if there is no world with that ID.
+	 */
+	public WorldModel get(final String id) throws IOException {
+		final int index = indexOf(id);
+		if (index < 0) {
+			throw new IllegalArgumentException("no world " + id + " in the archive");
+		}
+		return get(index);
+	}
+
+	/**
+	 * Packs all .wld files of a directory, sorted by name, into an archive. Files
+	 * that cannot be loaded are reported and left out.
+	 *
+	 * @param directory the directory with .wld files, of any format version.
+	 * @param archive   the archive to write. Overwritten if it exists.
+	 * @return the number of worlds in the archive.
+	 * @throws IOException if the archive cannot be written.
+	 */
+	public static int build(final File directory, final File archive) throws IOException {
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(".wld"));
+		if (files == null) {
+			throw new IllegalArgumentException(directory + " is not a directory");
+		}
+		Arrays.sort(files);
+		final List<String> ids = new ArrayList<>(files.length);
+		final long[] offsets = new long[files.length];
+		final int[] lengths = new int[files.length];
+
+		try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ChannelWriter output = new ChannelWriter(channel);
+			// header, completed at the end
+			output.writeInt(MAGIC);
+			output.writeInt(0);
+			output.writeLong(0);
+			for (final File file : files) {
+				final WorldModel world;
+				try {
+					world = WorldModel.load(file, WorldModel.Storage.DENSE);
+				} catch (final Exception ex) {
+					System.err.println(file + ": " + ex);
+					continue;
+				}
+				final int n = ids.size();
+				offsets[n] = output.size();
+				world.writeTo(output);
+				lengths[n] = (int) (output.size() - offsets[n]);
+				final String name = file.getName();
+				ids.add(name.substring(0, name.length() - ".wld".length()));
+			}
+			final long index = output.size();
+			if (index > Integer.MAX_VALUE) {
+				throw new IOException("the worlds take more than 2 GB, split the corpus");
+			}
+			for (int i = 0; i < ids.size(); i++) {
+				output.writeLong(offsets[i]);
+				output.writeInt(lengths[i]);
+			}
+			for (final String id : ids) {
+				output.writeString(id);
+			}
+			output.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(ids.size()).putLong(index).flip();
+			channel.write(header, 0);
+		}
+		return ids.size();
+	}
+
+	/**
+	 * Builds an archive from a directory of .wld files.
+	 *
+	 * @param args the directory and the archive file.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: WorldArchive <directory with .wld files> <archive>");
+			return;
+		}
+		System.out.println(build(new File(args[0]), new File(args[1])) + " worlds archived");
+	}
+}
@@ -0,0 +1,144 @@
+package wumpusenv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * WorldCache keeps worlds that were loaded from files, so that loading the
+ * same file again costs no I/O. A file is known by its canonical path, its
+ * modification time and its length: a file that changed is loaded again.
+ * <p>
+ * The cache hands out {@link WorldModel#fork() forks} of the loaded worlds,
+ * which take O(1) to make and can be changed freely. When the worlds in the
+ * cache have more squares than the limit, the least recently used worlds are
+ * dropped. A cache can be used from many threads at once.
+ * </p>
+ */
+public final class WorldCache {
+	/**
+	 * Limit of the shared cache, in squares: about 64 MB of squares in
+	 * {@link WorldModel.Storage#DENSE} storage.
+	 */
+	private static final long SHARED_LIMIT = 1L << 24;
+	private static final WorldCache SHARED = new WorldCache(SHARED_LIMIT);
+
+	private final long maxSquares;
+	private long squares = 0;
+	private final LinkedHashMap<Key, WorldModel> worlds = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxSquares the number of squares the cached worlds may have together.
+	 *                   A world that is larger on its own is still cached, until
+	 *                   the next world is loaded.
+	 */
+	public WorldCache(final long maxSquares) {
+		this.maxSquares = maxSquares;
+	}
+
+	/**
+	 * @return the cache used by the environment and the world editor.
+	 */
+	public static WorldCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Loads a world file, see {@link WorldModel#load(File, WorldModel.Storage)},
+	 * or takes it from the cache.
+	 *
+	 * @param file    the .wld file.
+	 * @param storage how the squares of the world are stored.
+	 * @return a new fork of the world in the file.
+	 * @throws IOException if the file cannot be loaded.
+	 */
+	public WorldModel load(final File file, final WorldModel.Storage storage) throws IOException {
+		final Key key = new Key(file, storage);
+		synchronized (this) {
+			final WorldModel world = this.worlds.get(key);
+			if (world != null) {
+				return world.fork();
+			}
+		}
+		// load without holding the lock; if two threads load the same file, the
+		// second one wins
+		final WorldModel world = WorldModel.load(file, storage);
+		synchronized (this) {
+			final WorldModel old = this.worlds.put(key, world);
+			if (old != null) {
+				this.squares -= old.squareCount();
+			}
+			this.squares += world.squareCount();
+			evict();
+			return world.fork();
+		}
+	}
+
+	/**
+	 * Drops all worlds.
+	 */
+	public synchronized void clear() {
+		this.worlds.clear();
+		this.squares = 0;
+	}
+
+	/**
+	 * @return the number of worlds in the cache.
+	 */
+	public synchronized int size() {
+		return this.worlds.size();
+	}
+
+	/**
+	 * Drops least recently used worlds until the limit is kept, but never the
+	 * most recent one.
+	 */
+	private void evict() {
+		final Iterator<WorldModel> lru = this.worlds.values().iterator();
+		while (this.squares > this.maxSquares && this.worlds.size() > 1) {
+			this.squares -= lru.next().squareCount();
+			lru.remove();
+		}
+	}
+
+	/**
+	 * Identifies a version of a file, loaded with a storage.
+	 */
+	private static final class Key {
+		private final String path;
+		private final long modified;
+		private final long length;
+		private final WorldModel.Storage storage;
+
+		Key(final File file, final WorldModel.Storage storage) throws IOException {
+			final Path path = file.getCanonicalFile().toPath();
+			final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			this.path = path.toString();
+			this.modified = attributes.lastModifiedTime().toMillis();
+			this.length = attributes.size();
+			this.storage = storage;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return this.path.equals(other.path) && this.modified == other.modified && this.length == other.length
+					&& this.storage == other.storage;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((this.path.hashCode() * 31 + Long.hashCode(this.modified)) * 31 + Long.hashCode(this.length)) * 31
+					+ this.storage.hashCode();
+		}
+	}
+}
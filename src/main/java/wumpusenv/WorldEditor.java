@@ -110,8 +110,6 @@ public class WorldEditor extends Panel implements Listener {
 			} else {
 				this.worldModel.setSquare(square, WorldModel.PIT | WorldModel.GROUND);
 			}
-			this.worldModel.removeBreeze();
-			this.worldModel.addBreeze();
 			return true;
 		case AGENT:
 			if (!right) {
@@ -121,18 +119,7 @@ public class WorldEditor extends Panel implements Listener {
 			return true;
 		case WUMPUS:
 			if (!right) {
-				final Point p = this.worldModel.getWumpusLocation();
-				if (p != null) {
-					this.worldModel.removeItem(new Point(p.x, p.y + 1), WorldModel.SMELL);
-					this.worldModel.removeItem(new Point(p.x, p.y - 1), WorldModel.SMELL);
-					this.worldModel.removeItem(new Point(p.x + 1, p.y), WorldModel.SMELL);
-					this.worldModel.removeItem(new Point(p.x - 1, p.y), WorldModel.SMELL);
-				}
 				this.worldModel.setWumpusLocation(square);
-				this.worldModel.addItem(square.x, square.y + 1, WorldModel.SMELL);
-				this.worldModel.addItem(square.x, square.y - 1, WorldModel.SMELL);
-				this.worldModel.addItem(square.x + 1, square.y, WorldModel.SMELL);
-				this.worldModel.addItem(square.x - 1, square.y, WorldModel.SMELL);
 			}
 			return true;
 		case GOLD:
@@ -208,7 +195,7 @@ public class WorldEditor extends Panel implements Listener {
 
 	public String loadFrom(final java.io.File file) {
 		try {
-			this.worldModel = this.worldModel.loadFrom(file);
+			this.worldModel = WorldCache.getShared().load(file, this.worldModel.getStorage());
 			this.worldView.update();
 			return "";
 		} catch (final Exception ex) {
@@ -218,7 +205,7 @@ public class WorldEditor extends Panel implements Listener {
 	}
 
 	public void loadFrom(final URL url) throws IOException {
-		this.worldModel = this.worldModel.loadFrom(url.openStream());
+		this.worldModel = WorldModel.load(url.openStream(), this.worldModel.getStorage());
 		if (this.parent.isGuiVisible()) {
 			this.worldView.update();
 		}
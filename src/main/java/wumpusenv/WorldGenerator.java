@@ -0,0 +1,165 @@
+package wumpusenv;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * WorldGenerator makes random worlds from a seed. The cave is a rectangle of
+ * ground, width by height squares with the lower left square at (0,0) and a
+ * ring of walls around it. The agent starts at (0,0). Every other square
+ * becomes a wall with probability wallDensity, or else a pit with probability
+ * pitDensity, and the wumpus, if any, is put on a random square that is left.
+ * <p>
+ * The gold is always safely reachable: before the hazards are placed, a random
+ * shortest path from the start to the gold is kept free of walls, pits and
+ * the wumpus.
+ * </p>
+ * <p>
+ * The same seed always gives the same world. A generator has no mutable state,
+ * so it can be used from many threads at once; {@link #generate(long, int)}
+ * makes a batch of worlds on all cores.
+ * </p>
+ */
+public final class WorldGenerator {
+	private final int width, height;
+	private final double pitDensity, wallDensity;
+	private final int wumpusCount;
+	private final WorldModel.Storage storage;
+
+	/**
+	 * Creates a generator for worlds with {@link WorldModel.Storage#DENSE}
+	 * storage.
+	 *
+	 * @param width       number of squares in a row, at least 1.
+	 * @param height      number of rows, at least 1.
+	 * @param pitDensity  chance that a square is a pit, between 0 and 1.
+	 * @param wallDensity chance that a square is a wall, between 0 and 1.
+	 * @param wumpusCount number of wumpuses, 0 or 1: a world has one wumpus that
+	 *                    can be alive or dead (see
+	 *                    {@link WorldModel#wumpusIsAlive()}). With no free
+	 *                    square left there is no wumpus.
+	 */
+	public WorldGenerator(final int width, final int height, final double pitDensity, final double wallDensity,
+			final int wumpusCount) {
+		this(width, height, pitDensity, wallDensity, wumpusCount, WorldModel.Storage.DENSE);
+	}
+
+	/**
+	 * See {@link #WorldGenerator(int, int, double, double, int)}.
+	 *
+	 * @param storage how the squares of the generated worlds are stored.
+	 */
+	public WorldGenerator(final int width, final int height, final double pitDensity, final double wallDensity,
+			final int wumpusCount, final WorldModel.Storage storage) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("size " + width + "x" + height + " is too small");
+		}
+		if (!(pitDensity >= 0 && pitDensity <= 1) || !(wallDensity >= 0 && wallDensity <= 1)) {
+			throw new IllegalArgumentException("densities must be between 0 and 1");
+		}
+		if (wumpusCount < 0 || wumpusCount > 1) {
+			throw new IllegalArgumentException("number of wumpuses must be 0 or 1: " + wumpusCount);
+		}
+		this.width = width;
+		this.height = height;
+		this.pitDensity = pitDensity;
+		this.wallDensity = wallDensity;
+		this.wumpusCount = wumpusCount;
+		this.storage = storage;
+	}
+
+	/**
+	 * Generates the world of a seed.
+	 *
+	 * @param seed any number.
+	 * @return a new world, reset and ready to play.
+	 */
+	public WorldModel generate(final long seed) {
+		final SplittableRandom random = new SplittableRandom(seed);
+		final int w = this.width;
+		final int h = this.height;
+		final int[] squares = new int[Math.multiplyExact(w, h)];
+
+		// gold anywhere but on the start, if there is room
+		final int gold = (squares.length == 1) ? 0 : 1 + random.nextInt(squares.length - 1);
+		final boolean[] path = new boolean[squares.length];
+		markPath(random, gold % w, gold / w, path);
+
+		for (int i = 0; i < squares.length; i++) {
+			squares[i] = WorldModel.GROUND;
+			if (!path[i]) {
+				if (random.nextDouble() < this.wallDensity) {
+					squares[i] |= WorldModel.WALL;
+				} else if (random.nextDouble() < this.pitDensity) {
+					squares[i] |= WorldModel.PIT;
+				}
+			}
+		}
+
+		// the wumpus on a random free square
+		final int[] free = new int[squares.length];
+		int nFree = 0;
+		for (int i = 0; i < squares.length; i++) {
+			if (!path[i] && squares[i] == WorldModel.GROUND) {
+				free[nFree++] = i;
+			}
+		}
+		final int wumpus = (this.wumpusCount > 0 && nFree > 0) ? free[random.nextInt(nFree)] : -1;
+		if (wumpus >= 0) {
+			squares[wumpus] |= WorldModel.WUMPUS;
+		}
+
+		// an empty world, so that nothing is left outside the walls
+		final WorldModel world = WorldModel.empty(this.storage);
+		for (int x = -1; x <= w; x++) {
+			world.setSquare(x, -1, WorldModel.GROUND | WorldModel.WALL);
+			world.setSquare(x, h, WorldModel.GROUND | WorldModel.WALL);
+		}
+		for (int y = 0; y < h; y++) {
+			world.setSquare(-1, y, WorldModel.GROUND | WorldModel.WALL);
+			world.setSquare(w, y, WorldModel.GROUND | WorldModel.WALL);
+			for (int x = 0; x < w; x++) {
+				world.setSquare(x, y, squares[y * w + x]);
+			}
+		}
+		world.setStartLocation(0, 0);
+		world.setAgentLocation(0, 0);
+		world.setGoldLocation(gold % w, gold / w);
+		if (wumpus >= 0) {
+			world.setWumpusLocation(wumpus % w, wumpus / w);
+		}
+		world.reset();
+		return world;
+	}
+
+	/**
+	 * Generates count worlds, in parallel. World i is the world of seed
+	 * {@code seed + i}, so any world of the batch can be made again on its own
+	 * with {@link #generate(long)}.
+	 *
+	 * @param seed  seed of the first world.
+	 * @param count number of worlds.
+	 * @return the worlds.
+	 */
+	public WorldModel[] generate(final long seed, final int count) {
+		return IntStream.range(0, count).parallel().mapToObj(i -> generate(seed + i)).toArray(WorldModel[]::new);
+	}
+
+	/**
+	 * Marks a random shortest path from the start (0,0) to (goldX, goldY): each
+	 * step goes right or up, at random where both are possible.
+	 */
+	private void markPath(final SplittableRandom random, final int goldX, final int goldY, final boolean[] path) {
+		int x = 0;
+		int y = 0;
+		path[0] = true;
+		while (x != goldX || y != goldY) {
+			if (y == goldY || (x != goldX && random.nextInt(goldX - x + goldY - y) < goldX - x)) {
+				x++;
+			} else {
+				y++;
+			}
+			path[y * this.width + x] = true;
+		}
+	}
+}
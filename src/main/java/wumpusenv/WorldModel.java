@@ -2,15 +2,13 @@ package wumpusenv;
 
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * @author Jan Misker Wouter: WorldModel contains a "map" of the world. It can
@@ -33,70 +31,233 @@ public class WorldModel {
 	public static final int SMELL = 0x100;
 	public static final int VISITED = 0x200;
 	public static final int OK = 0x400;
+	/**
+	 * Items that are not placed but follow from the squares around them: a breeze
+	 * next to every pit and a smell next to every wumpus.
+	 */
+	private static final int DERIVED = BREEZE | SMELL;
 	public static final String HEADER = "WumpusWorldModelFile0.9\n";
-	private final Map<Point, Integer> cave;
-	private final Rectangle bounds;
+	/**
+	 * Header of the current file format, see {@link #saveTo(File)}. Files with
+	 * the old {@link #HEADER} can still be loaded.
+	 */
+	public static final String HEADER_V2 = "WumpusWorldModelFile2.0\n";
+
+	/**
+	 * The ways in which a WorldModel can store its squares.
+	 */
+	public enum Storage {
+		/**
+		 * One int array covering the bounds of the cave. This is the fastest and
+		 * the default.
+		 */
+		DENSE,
+		/**
+		 * Chunks of 64x64 squares that are only allocated when written to. Use this
+		 * for very large caves with big empty areas.
+		 */
+		CHUNKED,
+		/**
+		 * One bit board per item, see {@link BitBoard}. Testing a single item is a
+		 * bit test and {@link WorldModel#getPlane(int)} is a copy, but reading a
+		 * whole square is slower.
+		 */
+		BITPLANES;
+
+		CaveGrid createGrid() {
+			switch (this) {
+			case CHUNKED:
+				return new ChunkedGrid();
+			case BITPLANES:
+				return new BitplaneGrid();
+			default:
+				return new DenseGrid();
+			}
+		}
+	}
+
+	private Storage storage;
+	/**
+	 * The squares of the cave.
+	 */
+	private CaveGrid cave;
+	/**
+	 * Bounds of the squares that have been written, inclusive. Kept as plain ints
+	 * so that a world can be used without loading any AWT class.
+	 */
+	private int minX, minY, maxX, maxY;
+	/**
+	 * Locations are packed in a long, x in the high and y in the low 32 bits, so
+	 * that moving things around never allocates. The (impossible) location
+	 * (Integer.MIN_VALUE, 0) means "not placed".
+	 */
+	private static final long NOWHERE = Long.MIN_VALUE;
 	// Position and status of several items in Wumpus World.
-	private Point agent, wumpus, start, gold;
+	private long agent = NOWHERE, wumpus = NOWHERE, start = NOWHERE, gold = NOWHERE;
+	/**
+	 * Walls and wumpuses per row and column, to trace arrows. Built on the first
+	 * shot, then kept up to date by setSquare. Null until then.
+	 */
+	private LineIndex walls = null, wumpuses = null;
 	private int fAgentOrientation;
 	private boolean fAgentHasArrow = true, fAgentClimbedOut = false, fAgentHasGold = false, fWumpusIsAlive = true;
+	/**
+	 * Zobrist hash of the squares: the XOR of {@link #squareKey(int, int, int)}
+	 * over all squares, kept up to date by every write. See
+	 * {@link #getStateHash()}.
+	 */
+	private long squaresHash = 0;
 
 	public WorldModel() {
-		this.cave = new HashMap<>();
-		this.bounds = new Rectangle(1, 1, 1, 1);
-		setStartLocation(new Point(0, 0));
-		setGoldLocation(new Point(2, 2));
+		this(Storage.DENSE);
+	}
+
+	/**
+	 * Creates an empty world.
+	 *
+	 * @param storage how the squares of the world are stored.
+	 */
+	public WorldModel(final Storage storage) {
+		this.storage = storage;
+		this.cave = storage.createGrid();
+		this.minX = this.maxX = 1;
+		this.minY = this.maxY = 1;
+		setStartLocation(0, 0);
+		setGoldLocation(2, 2);
 		reset();
 	}
 
+	/**
+	 * Creates a world with the given squares and nothing placed, for loaders
+	 * that set the rest themselves.
+	 */
+	private WorldModel(final Storage storage, final CaveGrid cave) {
+		this.storage = storage;
+		this.cave = cave;
+	}
+
+	/**
+	 * Creates a world without any squares, so also without the gold that
+	 * {@link #WorldModel(Storage)} puts at (2,2), for makers of worlds that set
+	 * every square and location themselves. The bounds are those of the squares
+	 * written, plus (0,0).
+	 */
+	static WorldModel empty(final Storage storage) {
+		return new WorldModel(storage, storage.createGrid());
+	}
+
+	/**
+	 * Copy constructor, see {@link #fork()}.
+	 */
+	private WorldModel(final WorldModel original) {
+		copyFrom(original);
+	}
+
+	/**
+	 * Creates a copy of this world, including the state of agent and wumpus. The
+	 * copy is made in O(1): the squares are shared, and each of the two worlds
+	 * copies a page (or chunk, or item plane) of squares only when it changes it
+	 * for the first time. Forking a world and playing a few steps in the fork
+	 * therefore costs memory in proportion to what changed, not to the size of
+	 * the cave.
+	 *
+	 * @return a new, independent world.
+	 */
+	public WorldModel fork() {
+		return new WorldModel(this);
+	}
+
+	/**
+	 * Puts this world back into the state of another world, typically one that
+	 * was made earlier with {@link #fork()}. Squares are shared as with fork, so
+	 * this is O(1) too and the other world can be restored from again.
+	 *
+	 * @param other the world to copy.
+	 */
+	public void restore(final WorldModel other) {
+		copyFrom(other);
+	}
+
+	private void copyFrom(final WorldModel other) {
+		this.storage = other.storage;
+		this.cave = other.cave.fork();
+		this.minX = other.minX;
+		this.minY = other.minY;
+		this.maxX = other.maxX;
+		this.maxY = other.maxY;
+		this.agent = other.agent;
+		this.wumpus = other.wumpus;
+		this.start = other.start;
+		this.gold = other.gold;
+		this.fAgentOrientation = other.fAgentOrientation;
+		this.fAgentHasArrow = other.fAgentHasArrow;
+		this.fAgentClimbedOut = other.fAgentClimbedOut;
+		this.fAgentHasGold = other.fAgentHasGold;
+		this.fWumpusIsAlive = other.fWumpusIsAlive;
+		this.squaresHash = other.squaresHash;
+		this.walls = (other.walls == null) ? null : other.walls.fork();
+		this.wumpuses = (other.wumpuses == null) ? null : other.wumpuses.fork();
+	}
+
+	public Storage getStorage() {
+		return this.storage;
+	}
+
 	public void reset() {
 		setAgentOrientation(0);
-		setAgentLocation(getStartLocation());
+		setAgentLocation(getStartX(), getStartY());
 		this.fAgentHasArrow = true;
 		this.fAgentHasGold = false;
 		this.fAgentClimbedOut = false;
 		this.fWumpusIsAlive = true;
 
-		removeBreeze();
-		addBreeze();
-		removeSmell();
-		addSmell();
-		setSquare(this.gold, GOLD | getSquare(this.gold));
+		setSquare(getGoldX(), getGoldY(), GOLD | getSquare(getGoldX(), getGoldY()));
 	}
 
 	public void addItem(final int x, final int y, final int item) {
-		addItem(new Point(x, y), item);
+		int oldData = this.cave.get(x, y);
+		if (oldData == CaveGrid.NONE) {
+			oldData = GROUND;
+		}
+		setSquare(x, y, oldData | item);
 	}
 
 	public void addItem(final Point square, final int item) {
-		Integer oldData = this.cave.get(square);
-		if (oldData == null) {
-			oldData = GROUND;
-		}
-		setSquare(square, oldData.intValue() | item);
+		addItem(square.x, square.y, item);
 	}
 
-	public void removeItem(final Point square, final int item) {
-		if (this.cave.get(square) == null) {
+	public void removeItem(final int x, final int y, final int item) {
+		final int oldData = this.cave.get(x, y);
+		if (oldData == CaveGrid.NONE) {
 			return;
 		}
-		final Integer oldData = this.cave.get(square);
 		if ((item == GROUND) || (item == CLEAR)) {
-			setSquare(square, CLEAR);
+			setSquare(x, y, CLEAR);
 		} else {
-			setSquare(square, oldData.intValue() & ~item);
+			setSquare(x, y, oldData & ~item);
 		}
 	}
 
-	public int getSquare(final Point square) {
-		final Object data = this.cave.get(square);
-		if (data == null) {
+	public void removeItem(final Point square, final int item) {
+		removeItem(square.x, square.y, item);
+	}
+
+	/**
+	 * Same as {@link #getSquare(Point)} but does not need a Point.
+	 */
+	public int getSquare(final int x, final int y) {
+		final int data = this.cave.get(x, y);
+		if (data == CaveGrid.NONE) {
 			return CLEAR;
 		} else {
-			return ((Integer) data);
+			return data;
 		}
 	}
 
+	public int getSquare(final Point square) {
+		return getSquare(square.x, square.y);
+	}
+
 	/**
 	 * Check if square contains given item.
 	 *
@@ -105,111 +266,382 @@ public class WorldModel {
 	 * @return true if given grid square contains the item
 	 */
 	public boolean contains(final Point square, final int item) {
-		final int tmp = getSquare(square);
-		if (tmp == CLEAR) {
-			return false;
-		} else {
-			return (tmp & item) == item;
+		return contains(square.x, square.y, item);
+	}
+
+	/**
+	 * Same as {@link #contains(Point, int)} but does not need a Point.
+	 */
+	public boolean contains(final int x, final int y, final int item) {
+		if (item == CLEAR) {
+			return getSquare(x, y) != CLEAR;
 		}
+		final int tmp = this.cave.get(x, y, item);
+		return tmp != CaveGrid.NONE && tmp == item;
 	}
 
+	/**
+	 * Sets the items on a square. BREEZE and SMELL are not taken from data: they
+	 * are kept up to date by the model itself. Placing or removing a pit or a
+	 * wumpus updates the four neighbouring squares, so an edit never needs a scan
+	 * of the whole cave.
+	 *
+	 * @param x    x coordinate of the square.
+	 * @param y    y coordinate of the square.
+	 * @param data the new items on the square.
+	 */
 	public void setSquare(final int x, final int y, final int data) {
-		setSquare(new Point(x, y), data);
+		// System.out.println("setSquare "+data+" at "+x+","+y);
+		final int oldData = getSquare(x, y);
+		final int newData = (data & ~DERIVED) | (oldData & DERIVED);
+		store(x, y, newData);
+
+		final int changed = oldData ^ newData;
+		if ((changed & PIT) != 0) {
+			updateNeighbours(x, y, PIT, BREEZE, (newData & PIT) != 0);
+		}
+		if ((changed & WUMPUS) != 0) {
+			updateNeighbours(x, y, WUMPUS, SMELL, (newData & WUMPUS) != 0);
+		}
+		if ((changed & WALL) != 0 && this.walls != null) {
+			updateIndex(this.walls, x, y, (newData & WALL) != 0);
+		}
+		if ((changed & WUMPUS) != 0 && this.wumpuses != null) {
+			updateIndex(this.wumpuses, x, y, (newData & WUMPUS) != 0);
+		}
+	}
+
+	private static void updateIndex(final LineIndex index, final int x, final int y, final boolean present) {
+		if (present) {
+			index.add(x, y);
+		} else {
+			index.remove(x, y);
+		}
 	}
 
 	public void setSquare(final Point square, final int data) {
-		// System.out.println("setSquare "+data+" at "+square);
-		if (square.x < this.bounds.x) {
-			this.bounds.width += this.bounds.x - square.x;
-			this.bounds.x = square.x;
+		setSquare(square.x, square.y, data);
+	}
+
+	/**
+	 * Writes data to a square as is, and grows the bounds if needed.
+	 */
+	private void store(final int x, final int y, final int data) {
+		this.minX = Math.min(this.minX, x);
+		this.maxX = Math.max(this.maxX, x);
+		this.minY = Math.min(this.minY, y);
+		this.maxY = Math.max(this.maxY, y);
+		this.squaresHash ^= squareKey(x, y, this.cave.get(x, y)) ^ squareKey(x, y, data);
+		this.cave.set(x, y, data);
+	}
+
+	/**
+	 * Zobrist key of square (x,y) holding data. A square that was never written
+	 * and a CLEAR square both have key 0, so they hash the same.
+	 */
+	private static long squareKey(final int x, final int y, final int data) {
+		if (data == CLEAR || data == CaveGrid.NONE) {
+			return 0;
 		}
-		if (square.x >= this.bounds.width + this.bounds.x) {
-			this.bounds.width = square.x - this.bounds.x + 1;
+		return mix(mix(pack(x, y)) + data);
+	}
+
+	/**
+	 * The finalizer of SplitMix64: spreads every bit of z over the whole result.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns a 64-bit hash of the whole state of the world: all squares (so also
+	 * the gold that is still there), the locations of agent, wumpus, start and
+	 * gold, the agent's orientation, arrow and gold, whether the wumpus is alive
+	 * and whether the agent climbed out. Two worlds in the same state have the
+	 * same hash, however they got there, so the hash can be used as key of a
+	 * transposition table. The squares are hashed incrementally on every write,
+	 * so this takes O(1) time. The score is not part of the world, and so not of
+	 * the hash.
+	 *
+	 * @return the hash of the state.
+	 */
+	public long getStateHash() {
+		long hash = this.squaresHash;
+		hash = mix(hash + this.agent);
+		hash = mix(hash + this.wumpus);
+		hash = mix(hash + this.start);
+		hash = mix(hash + this.gold);
+		return mix(hash + (((long) this.fAgentOrientation << 4) | stateFlags()));
+	}
+
+	/**
+	 * @return arrow, climbed out, gold and wumpus alive as bits 0 to 3.
+	 */
+	private int stateFlags() {
+		return (this.fAgentHasArrow ? 1 : 0) | (this.fAgentClimbedOut ? 2 : 0) | (this.fAgentHasGold ? 4 : 0)
+				| (this.fWumpusIsAlive ? 8 : 0);
+	}
+
+	/**
+	 * Called when a source item (PIT or WUMPUS) appeared on or disappeared from
+	 * square (x,y). Updates the derived flag on the four neighbours of the square.
+	 * A source that appeared gives its neighbours the flag without looking any
+	 * further; only a source that disappeared needs a look around each neighbour.
+	 */
+	private void updateNeighbours(final int x, final int y, final int source, final int flag,
+			final boolean appeared) {
+		if (appeared) {
+			addDerived(x, y + 1, flag);
+			addDerived(x, y - 1, flag);
+			addDerived(x + 1, y, flag);
+			addDerived(x - 1, y, flag);
+		} else {
+			updateDerived(x, y + 1, source, flag);
+			updateDerived(x, y - 1, source, flag);
+			updateDerived(x + 1, y, source, flag);
+			updateDerived(x - 1, y, source, flag);
 		}
-		if (square.y < this.bounds.y) {
-			this.bounds.height += this.bounds.y - square.y;
-			this.bounds.y = square.y;
+	}
+
+	/**
+	 * Sets derived flag on square (x,y), which is next to a source.
+	 */
+	private void addDerived(final int x, final int y, final int flag) {
+		final int data = this.cave.get(x, y);
+		if (data == CaveGrid.NONE) {
+			store(x, y, flag);
+		} else if ((data & flag) == 0) {
+			store(x, y, data | flag);
 		}
-		if (square.y >= this.bounds.height + this.bounds.y) {
-			this.bounds.height = square.y - this.bounds.y + 1;
+	}
+
+	/**
+	 * Sets or clears derived flag on square (x,y), depending on whether one of
+	 * its neighbours holds the source item. As before, a breeze or smell on an
+	 * empty square does not make it GROUND.
+	 */
+	private void updateDerived(final int x, final int y, final int source, final int flag) {
+		final boolean present = contains(x, y + 1, source) || contains(x, y - 1, source)
+				|| contains(x + 1, y, source) || contains(x - 1, y, source);
+		final int data = this.cave.get(x, y);
+		if (data == CaveGrid.NONE) {
+			if (present) {
+				store(x, y, flag);
+			}
+		} else if (present != ((data & flag) == flag)) {
+			store(x, y, present ? data | flag : data & ~flag);
 		}
-		this.cave.put(square, data);
 	}
 
+	/**
+	 * @return a new rectangle around all squares that have been written.
+	 */
 	public Rectangle getBounds() {
-		return this.bounds;
+		return new Rectangle(this.minX, this.minY, this.maxX - this.minX + 1, this.maxY - this.minY + 1);
 	}
 
-	public void setAgentLocation(final Point p) {
-		if (this.agent == null) {
-			this.agent = new Point(p.x, p.y);
-			addItem(this.agent, AGENT);
-			return;
+	/**
+	 * Traces an arrow shot from square (x,y) in the given orientation. The arrow
+	 * flies until it hits a wall; it hits a wumpus if there is one on its way,
+	 * before the wall (a wumpus standing in a wall is not hit). Whether the
+	 * wumpus is alive is not checked here.
+	 * <p>
+	 * Instead of walking the squares, this looks up the nearest wall and wumpus
+	 * in the row or column of (x,y), so the cost does not depend on the distance
+	 * to the wall. If there is no wall at all the arrow flies on forever, and
+	 * only hits a wumpus that is somewhere ahead.
+	 * </p>
+	 *
+	 * @param orientation 0 (east), 90 (north), 180 (west) or 270 (south). Other
+	 *                    orientations never hit.
+	 * @return true if the arrow hits a wumpus.
+	 */
+	public boolean arrowHitsWumpus(final int x, final int y, final int orientation) {
+		if (this.walls == null) {
+			this.walls = LineIndex.build(this.cave, WALL);
+			this.wumpuses = LineIndex.build(this.cave, WUMPUS);
+		}
+		switch (orientation) {
+		case 0:
+			return this.wumpuses.nextInRow(y, x) < this.walls.nextInRow(y, x);
+		case 90:
+			return this.wumpuses.nextInColumn(x, y) < this.walls.nextInColumn(x, y);
+		case 180:
+			return this.wumpuses.previousInRow(y, x) > this.walls.previousInRow(y, x);
+		case 270:
+			return this.wumpuses.previousInColumn(x, y) > this.walls.previousInColumn(x, y);
+		default:
+			return false;
 		}
-		removeItem(this.agent, AGENT);
-		this.agent = new Point(p.x, p.y);
-		addItem(this.agent, AGENT);
 	}
 
-	public Point getAgentLocation() {
-		if (this.agent == null) {
-			return null;
+	/**
+	 * Returns what an agent standing on square (x,y) perceives from the squares
+	 * around it: breeze, stench and glitter. Because BREEZE and SMELL are kept up
+	 * to date on every square (see {@link #setSquare(int, int, int)}), the cave
+	 * itself is the precomputed percept table and this is a single read.
+	 *
+	 * @return mask of {@link WumpusWorldPercept#BREEZE},
+	 *         {@link WumpusWorldPercept#STENCH} and
+	 *         {@link WumpusWorldPercept#GLITTER}.
+	 */
+	public int getPerceptMask(final int x, final int y) {
+		final int data = this.cave.get(x, y, BREEZE | SMELL | GOLD);
+		if (data == CaveGrid.NONE) {
+			return 0;
 		}
-		return new Point(this.agent.x, this.agent.y);
+		return ((data & BREEZE) != 0 ? WumpusWorldPercept.BREEZE : 0)
+				| ((data & SMELL) != 0 ? WumpusWorldPercept.STENCH : 0)
+				| ((data & GOLD) != 0 ? WumpusWorldPercept.GLITTER : 0);
 	}
 
-	public void setGoldLocation(final Point p) {
-		if (this.gold == null) {
-			this.gold = new Point(p.x, p.y);
-			addItem(this.gold, GOLD);
-			return;
+	/**
+	 * Returns all squares that contain item as a {@link BitBoard} covering the
+	 * bounds of the world. For example, {@code getPlane(PIT).adjacent()} gives
+	 * every square next to a pit. With {@link Storage#BITPLANES} this is a copy
+	 * of the stored boards; with the other storage modes the cave is scanned
+	 * once.
+	 *
+	 * @param item one of the item constants, or several or-ed together.
+	 * @return a new board with the squares that contain item.
+	 */
+	public BitBoard getPlane(final int item) {
+		return this.cave.plane(item, this.minX, this.minY, this.maxX - this.minX + 1, this.maxY - this.minY + 1);
+	}
+
+	/**
+	 * Moves item from its old location (if any) to square (x,y).
+	 *
+	 * @return the new, packed, location.
+	 */
+	private long move(final long old, final int item, final int x, final int y) {
+		if (old != NOWHERE) {
+			removeItem(unpackX(old), unpackY(old), item);
 		}
-		removeItem(this.gold, GOLD);
-		this.gold = new Point(p.x, p.y);
-		addItem(this.gold, GOLD);
+		if (!contains(x, y, item)) {
+			addItem(x, y, item);
+		}
+		return pack(x, y);
 	}
 
-	public Point getGoldLocation() {
-		if (this.gold == null) {
+	private static long pack(final int x, final int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	private static int unpackX(final long location) {
+		return (int) (location >> 32);
+	}
+
+	private static int unpackY(final long location) {
+		return (int) location;
+	}
+
+	private static Point toPoint(final long location) {
+		if (location == NOWHERE) {
 			return null;
 		}
-		return new Point(this.gold.x, this.gold.y);
+		return new Point(unpackX(location), unpackY(location));
+	}
+
+	public void setAgentLocation(final int x, final int y) {
+		this.agent = move(this.agent, AGENT, x, y);
+	}
+
+	public void setAgentLocation(final Point p) {
+		setAgentLocation(p.x, p.y);
+	}
+
+	/**
+	 * @return a copy of the agent location, or null if there is no agent. Use
+	 *         {@link #getAgentX()} and {@link #getAgentY()} to avoid the copy.
+	 */
+	public Point getAgentLocation() {
+		return toPoint(this.agent);
+	}
+
+	public int getAgentX() {
+		return unpackX(this.agent);
+	}
+
+	public int getAgentY() {
+		return unpackY(this.agent);
+	}
+
+	public void setGoldLocation(final int x, final int y) {
+		this.gold = move(this.gold, GOLD, x, y);
+	}
+
+	public void setGoldLocation(final Point p) {
+		setGoldLocation(p.x, p.y);
+	}
+
+	public Point getGoldLocation() {
+		return toPoint(this.gold);
+	}
+
+	public int getGoldX() {
+		return unpackX(this.gold);
+	}
+
+	public int getGoldY() {
+		return unpackY(this.gold);
+	}
+
+	public void setStartLocation(final int x, final int y) {
+		this.start = move(this.start, START, x, y);
 	}
 
 	public void setStartLocation(final Point p) {
-		if (this.start == null) {
-			this.start = new Point(p.x, p.y);
-			addItem(this.start, START);
-			return;
-		}
-		removeItem(this.start, START);
-		this.start = new Point(p.x, p.y);
-		addItem(this.start, START);
+		setStartLocation(p.x, p.y);
 	}
 
 	public Point getStartLocation() {
-		if (this.start == null) {
-			return null;
-		}
-		return new Point(this.start.x, this.start.y);
+		return toPoint(this.start);
+	}
+
+	public int getStartX() {
+		return unpackX(this.start);
+	}
+
+	public int getStartY() {
+		return unpackY(this.start);
+	}
+
+	/**
+	 * @return true if the agent stands on the start square.
+	 */
+	public boolean agentAtStart() {
+		return this.agent == this.start;
+	}
+
+	public void setWumpusLocation(final int x, final int y) {
+		this.wumpus = move(this.wumpus, WUMPUS, x, y);
 	}
 
 	public void setWumpusLocation(final Point p) {
-		if (this.wumpus == null) {
-			this.wumpus = new Point(p.x, p.y);
-			addItem(this.wumpus, WUMPUS);
-			return;
-		}
-		removeItem(this.wumpus, WUMPUS);
-		this.wumpus = new Point(p.x, p.y);
-		addItem(this.wumpus, WUMPUS);
+		setWumpusLocation(p.x, p.y);
 	}
 
 	public Point getWumpusLocation() {
-		if (this.wumpus == null) {
-			return null;
-		}
-		return new Point(this.wumpus.x, this.wumpus.y);
+		return toPoint(this.wumpus);
+	}
+
+	/**
+	 * @return true if a wumpus has been placed. Only then {@link #getWumpusX()}
+	 *         and {@link #getWumpusY()} are meaningful.
+	 */
+	public boolean hasWumpus() {
+		return this.wumpus != NOWHERE;
+	}
+
+	public int getWumpusX() {
+		return unpackX(this.wumpus);
+	}
+
+	public int getWumpusY() {
+		return unpackY(this.wumpus);
 	}
 
 	public void setAgentOrientation(final int o) {
@@ -264,8 +696,10 @@ public class WorldModel {
 	}
 
 	public boolean agentKilled() {
-		boolean killed = (contains(this.agent, WUMPUS) && this.fWumpusIsAlive);
-		killed = killed || contains(this.agent, PIT);
+		final int x = getAgentX();
+		final int y = getAgentY();
+		boolean killed = (contains(x, y, WUMPUS) && this.fWumpusIsAlive);
+		killed = killed || contains(x, y, PIT);
 		return killed;
 	}
 
@@ -275,130 +709,234 @@ public class WorldModel {
 	 * @return {@code true} if runnable; {@code false} otherwise.
 	 */
 	public boolean isRunnable() {
-		return this.agent != null && !agentKilled();
+		return this.agent != NOWHERE && !agentKilled();
 	}
 
-	public void addBreeze() {
-		for (final Point square : this.cave.keySet()) {
-			if (contains(square, PIT)) {
-				addBreeze(square.x, square.y + 1);
-				addBreeze(square.x, square.y - 1);
-				addBreeze(square.x + 1, square.y);
-				addBreeze(square.x - 1, square.y);
-			}
-		}
+	/**
+	 * @return the number of squares that have been written.
+	 */
+	int squareCount() {
+		return this.cave.size();
 	}
 
-	private void addBreeze(final int x, final int y) {
-		final Point p = new Point(x, y);
-		final int old = getSquare(p);
-		if (old == CLEAR) {
-			setSquare(p, BREEZE);
-		} else {
-			addItem(p, BREEZE);
+	/**
+	 * Visits every square that has been written, with its data.
+	 */
+	void forEachSquare(final SquareVisitor visitor) {
+		this.cave.forEach(visitor);
+	}
+
+	/**
+	 * Wouter: added for convenient debugging. It's beyond me why Jan did not use a
+	 * simple format like this for the files as well
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder();
+		this.cave.forEach((x, y, data) -> result.append("point(").append(x).append(",").append(y).append(" ")
+				.append(data).append(") "));
+		return result.toString();
+	}
+
+	/**
+	 * Saves this world in the compact format of {@link #HEADER_V2}: after the
+	 * header the bounds (x, y, width, height), the locations of agent, wumpus,
+	 * start and gold, and then the squares inside the bounds row by row,
+	 * run-length encoded as pairs of varints (run length, data + 1), so that a
+	 * square that was never written is 0. The file is written through one buffer.
+	 *
+	 * @return "" if the world was saved, else a description of the error.
+	 */
+	public String saveTo(final File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ChannelWriter output = new ChannelWriter(channel);
+			output.writeString(HEADER_V2);
+			writeTo(output);
+			output.flush();
+			return "";
+		} catch (final IOException ex) {
+			System.err.println(ex.toString());
+			return ex.toString();
 		}
 	}
 
-	public void removeBreeze() {
-		for (final Point square : this.cave.keySet()) {
-			if (contains(square, BREEZE)) {
-				removeItem(square, BREEZE);
+	/**
+	 * Writes this world in the format of {@link #saveTo(File)}, without header.
+	 */
+	void writeTo(final ChannelWriter output) throws IOException {
+		final int width = this.maxX - this.minX + 1;
+		final int height = this.maxY - this.minY + 1;
+		output.writeInt(this.minX);
+		output.writeInt(this.minY);
+		output.writeInt(width);
+		output.writeInt(height);
+		output.writeLong(this.agent);
+		output.writeLong(this.wumpus);
+		output.writeLong(this.start);
+		output.writeLong(this.gold);
+		int run = 0;
+		int last = CaveGrid.NONE;
+		for (int y = this.minY; y <= this.maxY; y++) {
+			for (int x = this.minX; x <= this.maxX; x++) {
+				final int data = this.cave.get(x, y);
+				if (data != last && run > 0) {
+					output.writeVarint(run);
+					output.writeVarint(last + 1);
+					run = 0;
+				}
+				last = data;
+				run++;
 			}
 		}
+		output.writeVarint(run);
+		output.writeVarint(last + 1);
 	}
 
-	public void addSmell() {
-		final Point square = getWumpusLocation();
-		if (square == null) {
-			return;
-		}
-		addSmell(square.x, square.y + 1);
-		addSmell(square.x, square.y - 1);
-		addSmell(square.x + 1, square.y);
-		addSmell(square.x - 1, square.y);
+	/**
+	 * Writes this world like {@link #writeTo(ChannelWriter)}, followed by the
+	 * state of agent and wumpus: the agent's orientation and the flags of
+	 * {@link #getStateHash()}.
+	 */
+	void writeStateTo(final ChannelWriter output) throws IOException {
+		writeTo(output);
+		output.writeVarint(this.fAgentOrientation);
+		output.writeVarint(stateFlags());
 	}
 
-	private void addSmell(final int x, final int y) {
-		final Point p = new Point(x, y);
-		final int old = getSquare(p);
-		if (old == CLEAR) {
-			setSquare(p, SMELL);
-		} else {
-			addItem(p, SMELL);
-		}
+	/**
+	 * Reads a world written by {@link #writeStateTo(ChannelWriter)}, in the
+	 * state it had when written.
+	 */
+	static WorldModel readStateFrom(final ChannelReader input, final Storage storage) throws IOException {
+		final WorldModel model = readFrom(input, storage);
+		model.fAgentOrientation = input.readVarint();
+		final int flags = input.readVarint();
+		model.fAgentHasArrow = (flags & 1) != 0;
+		model.fAgentClimbedOut = (flags & 2) != 0;
+		model.fAgentHasGold = (flags & 4) != 0;
+		model.fWumpusIsAlive = (flags & 8) != 0;
+		return model;
 	}
 
-	public void removeSmell() {
-		for (final Point square : this.cave.keySet()) {
-			if (contains(square, SMELL)) {
-				removeItem(square, SMELL);
-			}
-		}
+	/**
+	 * Same as {@link #load(File, Storage)}, with the storage of this world.
+	 */
+	public WorldModel loadFrom(final File file) throws Exception {
+		return load(file, this.storage);
 	}
 
 	/**
-	 * Wouter: added for convenient debugging. It's beyond me why Jan did not use a
-	 * simple format like this for the files as well
+	 * Same as {@link #load(InputStream, Storage)}, with the storage of this
+	 * world.
 	 */
-	@Override
-	public String toString() {
-		String result = "";
-		for (final Point key : this.cave.keySet()) {
-			result = result + "point(" + key.x + "," + key.y + " ";
-			result = result + this.cave.get(key).intValue() + ") ";
-		}
-		return result;
+	public WorldModel loadFrom(final InputStream input) throws IOException {
+		return load(input, this.storage);
 	}
 
-	public String saveTo(final File file) {
-		try {
-			if (file.exists()) {
-				file.delete();
-			}
-			final DataOutputStream fileOutput = new DataOutputStream(new FileOutputStream(file));
-			fileOutput.writeUTF(HEADER);
-			fileOutput.writeInt(this.cave.size());
-			for (final Point key : this.cave.keySet()) {
-				fileOutput.writeInt(key.x);
-				fileOutput.writeInt(key.y);
-				fileOutput.writeInt(this.cave.get(key));
-			}
-			fileOutput.flush();
-			fileOutput.close();
-			return "";
-		} catch (final Exception ex) {
-			System.err.println(ex.toString());
-			return "ex.toString()";
+	/**
+	 * Loads a world saved with {@link #saveTo(File)}, or in the old format of
+	 * {@link #HEADER}. The file is read once, front to back, through one buffer.
+	 *
+	 * @param storage how the squares of the loaded world are stored.
+	 * @return the loaded world.
+	 */
+	public static WorldModel load(final File file, final Storage storage) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return load(new ChannelReader(channel), storage);
 		}
 	}
 
-	public WorldModel loadFrom(final File file) throws Exception {
-		return loadFrom(new FileInputStream(file));
+	/**
+	 * Same as {@link #load(File, Storage)}, for a stream. The stream is closed.
+	 */
+	public static WorldModel load(final InputStream input, final Storage storage) throws IOException {
+		try (ReadableByteChannel channel = Channels.newChannel(input)) {
+			return load(new ChannelReader(channel), storage);
+		}
 	}
 
-	public WorldModel loadFrom(final InputStream input) throws IOException {
-		final DataInputStream fileInput = new DataInputStream(input);
-		if (!fileInput.readUTF().equals(HEADER)) {
+	/**
+	 * Reads a world in one pass. Squares of the old format are set one by one as
+	 * they arrive, which keeps BREEZE and SMELL up to date on the way; the new
+	 * format holds them already.
+	 */
+	private static WorldModel load(final ChannelReader input, final Storage storage) throws IOException {
+		final String header = input.readString();
+		if (header.equals(HEADER_V2)) {
+			return readFrom(input, storage);
+		}
+		if (!header.equals(HEADER)) {
 			throw new IOException("Invalid WorldModel-file");
 		}
-		final int size = fileInput.readInt();
-		final WorldModel loadModel = new WorldModel();
+		final int size = input.readInt();
+		final WorldModel loadModel = new WorldModel(storage);
 		for (int i = 0; i < size; i++) {
-			final Point square = new Point(fileInput.readInt(), fileInput.readInt());
-			final int value = fileInput.readInt();
-			loadModel.setSquare(square, value);
+			final int x = input.readInt();
+			final int y = input.readInt();
+			final int value = input.readInt();
+			loadModel.setSquare(x, y, value);
 			if ((value & WUMPUS) == WUMPUS) {
-				loadModel.setWumpusLocation(square);
+				loadModel.setWumpusLocation(x, y);
 			}
 			if ((value & AGENT) == AGENT) {
-				loadModel.setAgentLocation(square);
-				loadModel.setStartLocation(square);
+				loadModel.setAgentLocation(x, y);
+				loadModel.setStartLocation(x, y);
 			}
 			if ((value & GOLD) == GOLD) {
-				loadModel.setGoldLocation(square);
+				loadModel.setGoldLocation(x, y);
 			}
 		}
-		fileInput.close();
 		return loadModel;
 	}
+
+	/**
+	 * Reads a world written by {@link #writeTo(ChannelWriter)}. The squares are
+	 * stored as they were saved, BREEZE and SMELL included, so nothing has to be
+	 * derived again. The agent is as after {@link #reset()}, but the squares are
+	 * not touched: a saved world has its gold where it was when saved. No other
+	 * world is made on the way.
+	 */
+	static WorldModel readFrom(final ChannelReader input, final Storage storage) throws IOException {
+		final int minX = input.readInt();
+		final int minY = input.readInt();
+		final int width = input.readInt();
+		final int height = input.readInt();
+		if (width < 1 || height < 1) {
+			throw new IOException("Invalid WorldModel-file: size " + width + "x" + height);
+		}
+		final WorldModel model = new WorldModel(storage, storage.createGrid());
+		model.cave.reserve(minX, minY, minX + width - 1, minY + height - 1);
+		model.agent = input.readLong();
+		model.wumpus = input.readLong();
+		model.start = input.readLong();
+		model.gold = input.readLong();
+
+		final long squares = (long) width * height;
+		long done = 0;
+		int x = minX;
+		int y = minY;
+		while (done < squares) {
+			final int run = input.readVarint();
+			final int data = input.readVarint() - 1;
+			if (run <= 0 || run > squares - done) {
+				throw new IOException("Invalid WorldModel-file: bad run of " + run + " squares");
+			}
+			done += run;
+			for (int i = 0; i < run; i++) {
+				if (data != CaveGrid.NONE) {
+					model.store(x, y, data);
+				}
+				if (++x == minX + width) {
+					x = minX;
+					y++;
+				}
+			}
+		}
+		model.minX = minX;
+		model.minY = minY;
+		model.maxX = minX + width - 1;
+		model.maxY = minY + height - 1;
+		return model;
+	}
 }
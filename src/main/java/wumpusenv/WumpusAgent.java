@@ -7,7 +7,7 @@ package wumpusenv;
  */
 public class WumpusAgent {
 	// first perceive is at t=0
-	static int STARTTIME = 0;
+	static final int STARTTIME = 0;
 	// Time according to the agent. Perception of time is 'subjective'.
 	private int currentTime = STARTTIME;
 
@@ -21,9 +21,29 @@ public class WumpusAgent {
 	 * @param action
 	 */
 	public int action(final String action) {
+		return action(toAction(action));
+	}
+
+	/**
+	 * Same as {@link #action(String)}, for an action that is already an action
+	 * number of {@link TheGame}.
+	 *
+	 * @param action action number.
+	 * @return action.
+	 */
+	public int action(final int action) {
 		// Advance the time
 		this.currentTime++;
+		return action;
+	}
 
+	/**
+	 * Returns the action number that is associated with the action string.
+	 *
+	 * @param action e.g. "forward" or "turn(left)".
+	 * @return action number of {@link TheGame}, NO_ACTION if action is unknown.
+	 */
+	public static int toAction(final String action) {
 		// We rely on the exact output of toString, since unpacking the term is
 		// much more work and not worth it.
 		if (action.equals("forward")) {
@@ -43,6 +63,31 @@ public class WumpusAgent {
 		}
 	}
 
+	/**
+	 * Inverse of {@link #toAction(String)}.
+	 *
+	 * @param action action number of {@link TheGame}.
+	 * @return the action string, "noop" for NO_ACTION or an unknown number.
+	 */
+	public static String toString(final int action) {
+		switch (action) {
+		case TheGame.FORWARD:
+			return "forward";
+		case TheGame.GRAB:
+			return "grab";
+		case TheGame.SHOOT:
+			return "shoot";
+		case TheGame.CLIMB:
+			return "climb";
+		case TheGame.TURN_LEFT:
+			return "turn(left)";
+		case TheGame.TURN_RIGHT:
+			return "turn(right)";
+		default:
+			return "noop";
+		}
+	}
+
 	/**
 	 * Returns the current time according to the agent.
 	 *
@@ -51,4 +96,11 @@ public class WumpusAgent {
 	public int getTime() {
 		return this.currentTime;
 	}
+
+	/**
+	 * Sets the time according to the agent, when a game is restored.
+	 */
+	void setTime(final int time) {
+		this.currentTime = time;
+	}
 }
@@ -42,7 +42,7 @@ public class WumpusApp extends Frame {
 	private Runner runner;
 
 	// Graphics
-	private static String fPath = "wumpusenv/images";
+	private static final String fPath = "wumpusenv/images";
 	private CardLayout cardLayout;
 	private Panel mainPanel;
 	private Properties preferences;
@@ -65,15 +65,16 @@ public class WumpusApp extends Frame {
 	public WumpusApp(final WumpusWorld obs, final boolean showGui) {
 		super("Wumpus environment editor and simulator");
 		this.guiVisible = showGui;
-		InitWumpusApp();
+		// the runner needs the observer
 		this.myObserver = obs;
+		InitWumpusApp();
 		addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowClosed(final WindowEvent e) {
 				// clean up first
-				WumpusWorld.getInstance().unregisterEntity();
+				WumpusApp.this.myObserver.unregisterEntity();
 				// close
-				WumpusWorld.getInstance().close();
+				WumpusApp.this.myObserver.close();
 			}
 		});
 	}
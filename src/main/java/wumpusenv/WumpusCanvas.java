@@ -127,15 +127,15 @@ class WumpusCanvas extends Canvas implements MouseListener, MouseMotionListener
 		drawGrid(this.offGraphics);
 		for (int x = this.focus.x - (this.xFit - 1) / 2; x < this.focus.x + (this.xFit + 1) / 2; x++) {
 			for (int y = this.focus.y - (this.yFit - 1) / 2; y < this.focus.y + (this.yFit + 1) / 2; y++) {
-				if (this.worldModel.contains(new Point(x, y), WorldModel.GROUND)) {
+				if (this.worldModel.contains(x, y, WorldModel.GROUND)) {
 					try {
 						drawSquare(this.offGraphics,
 								this.center.x - this.squareSize / 2 + (x - this.focus.x) * this.squareSize,
 								this.center.y - this.squareSize / 2 - (y - this.focus.y) * this.squareSize,
-								this.worldModel.getSquare(new Point(x, y)),
+								this.worldModel.getSquare(x, y),
 								this.worldModel.getAgentOrientation() % 360);
 					} catch (final Exception e) {
-						new ErrorDetails(e, " on drawSquare type" + this.worldModel.getSquare(new Point(x, y))
+						new ErrorDetails(e, " on drawSquare type" + this.worldModel.getSquare(x, y)
 								+ "] orient: " + this.worldModel.getAgentOrientation() % 360);
 					}
 				}
@@ -0,0 +1,23 @@
+package wumpusenv;
+
+import eis.iilang.EnvironmentState;
+
+/**
+ * WumpusObserver is told about changes of the state of a running game, see
+ * {@link Simulator}. It is implemented by {@link WumpusWorld}, which passes the
+ * changes on to the EIS interface, and by the EIS interface itself when it runs
+ * the simulator without a GUI.
+ */
+public interface WumpusObserver {
+	/**
+	 * Called when the game is paused, started, finished or closed.
+	 *
+	 * @param state is the new {@link EnvironmentState}.
+	 */
+	void notifyStateChange(EnvironmentState state);
+
+	/**
+	 * Called when the agent died or climbed out, so the entity is gone.
+	 */
+	void unregisterEntity();
+}
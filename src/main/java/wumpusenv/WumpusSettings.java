@@ -10,7 +10,7 @@ public class WumpusSettings {
 		width, height, x, y
 	}
 
-	static private Preferences prefs = Preferences.userNodeForPackage(WumpusSettings.class);
+	static private final Preferences prefs = Preferences.userNodeForPackage(WumpusSettings.class);
 
 	/**
 	 * get preferred width of the window.
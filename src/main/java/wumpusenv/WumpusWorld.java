@@ -54,7 +54,7 @@ import eis.iilang.EnvironmentState;
  *
  * TODO Links not working
  */
-public class WumpusWorld extends Panel {
+public class WumpusWorld extends Panel implements WumpusObserver {
 	private static final long serialVersionUID = 1L;
 
 	private WumpusEnvironment wumpusInterface;
@@ -66,13 +66,15 @@ public class WumpusWorld extends Panel {
 	 * @param args
 	 */
 	public static void main(final String[] args) {
-		getInstance().setUp(true);
+		new WumpusWorld().setUp(true);
 	}
 
 	/**
-	 * Creates a new Wumpus world object and creates a Wumpus application.
+	 * Creates a new Wumpus world object. Each Wumpus world has its own
+	 * application, runner and EIS interface, so several worlds can run in one
+	 * JVM. Call {@link #setUp(boolean)} to create the application.
 	 */
-	private WumpusWorld() {
+	public WumpusWorld() {
 		System.out.println("Initializing the Wumpus World.");
 		addMouseListener(new MouseAdapter() {
 			@Override
@@ -82,26 +84,6 @@ public class WumpusWorld extends Panel {
 		});
 	}
 
-	/**
-	 * WumpusWorldHolder is loaded on the first execution of
-	 * WumpusWorld.getInstance() or the first access to WumpusWorldHolder.INSTANCE,
-	 * not before.
-	 */
-	private static class WumpusWorldHolder {
-		private static final WumpusWorld INSTANCE = new WumpusWorld();
-	}
-
-	/**
-	 * Create or get a reference to the unique singleton Wumpus world.
-	 *
-	 * @return singleton Wumpus world object. see Threadsafe, see: {link http
-	 *         ://en.wikipedia.org/wiki/Singleton_pattern
-	 *         #The_solution_of_Bill_Pugh}. TODO Links not working
-	 */
-	public static WumpusWorld getInstance() {
-		return WumpusWorldHolder.INSTANCE;
-	}
-
 	/**
 	 * Sets EIS interface object.
 	 */
@@ -121,6 +103,7 @@ public class WumpusWorld extends Panel {
 	/**
 	 * Unregister entity with EIS interface if such an interface is available.
 	 */
+	@Override
 	public void unregisterEntity() {
 		if (this.wumpusInterface != null) {
 			this.wumpusInterface.unregisterEntity();
@@ -134,6 +117,7 @@ public class WumpusWorld extends Panel {
 	 * @param state is the new {@link EnvironmentState}.
 	 *
 	 */
+	@Override
 	public void notifyStateChange(final EnvironmentState state) {
 		if (this.wumpusInterface != null) {
 			this.wumpusInterface.notifyStateChange(state);
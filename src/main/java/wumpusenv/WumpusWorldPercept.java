@@ -5,72 +5,88 @@ package wumpusenv;
  * perceptions. In the wumpus world there are 5 basic percepts: breeze, stench,
  * bump, scream and glitter. The percept here is pretty simple: you either have
  * or not have a certian percept.
+ * <p>
+ * Percepts are immutable. There are only 32 of them, one per combination, and
+ * {@link #valueOf(int)} hands out the same instance for the same combination,
+ * so percepts can be kept and shared between threads freely. The time of a
+ * percept is not part of it; ask the game for it.
+ * </p>
  */
-public class WumpusWorldPercept {
-	private boolean fBreeze, fStench, fBump, fScream, fGlitter;
-	private int time;
+public final class WumpusWorldPercept {
+	// Following are the bits of a percept mask, see getMask().
+	public static final int BREEZE = 0x1;
+	public static final int STENCH = 0x2;
+	public static final int BUMP = 0x4;
+	public static final int SCREAM = 0x8;
+	public static final int GLITTER = 0x10;
+	private static final int ALL = BREEZE | STENCH | BUMP | SCREAM | GLITTER;
 
-	public WumpusWorldPercept() {
-		reset();
+	private static final WumpusWorldPercept[] VALUES = new WumpusWorldPercept[ALL + 1];
+	static {
+		for (int mask = 0; mask <= ALL; mask++) {
+			VALUES[mask] = new WumpusWorldPercept(mask);
+		}
 	}
 
-	public void reset() {
-		this.fBreeze = this.fStench = this.fBump = this.fScream = this.fGlitter = false;
+	private final int mask;
+
+	private WumpusWorldPercept(final int mask) {
+		this.mask = mask;
 	}
 
 	/**
-	 * Sets current time, to add to percept.
-	 *
-	 * @param time current time, to be added to percept.
+	 * @param mask a mask of {@link #BREEZE}, {@link #STENCH}, {@link #BUMP},
+	 *             {@link #SCREAM} and {@link #GLITTER}. Other bits are ignored.
+	 * @return the percept with exactly the percepts in mask.
 	 */
-	public void setTime(final int time) {
-		this.time = time;
-	}
-
-	public void setBreeze(final boolean pVal) {
-		this.fBreeze = pVal;
+	public static WumpusWorldPercept valueOf(final int mask) {
+		return VALUES[mask & ALL];
 	}
 
 	public boolean getBreeze() {
-		return this.fBreeze;
-	}
-
-	public void setStench(final boolean pVal) {
-		this.fStench = pVal;
+		return (this.mask & BREEZE) != 0;
 	}
 
 	public boolean getStench() {
-		return this.fStench;
-	}
-
-	public void setBump(final boolean pVal) {
-		this.fBump = pVal;
+		return (this.mask & STENCH) != 0;
 	}
 
 	public boolean getBump() {
-		return this.fBump;
+		return (this.mask & BUMP) != 0;
 	}
 
-	public void setScream(final boolean pVal) {
-		this.fScream = pVal;
+	public boolean getScream() {
+		return (this.mask & SCREAM) != 0;
 	}
 
-	public boolean getScream() {
-		return this.fScream;
+	public boolean getGlitter() {
+		return (this.mask & GLITTER) != 0;
 	}
 
-	public void setGlitter(final boolean pVal) {
-		this.fGlitter = pVal;
+	/**
+	 * @return the percept as a mask of {@link #BREEZE}, {@link #STENCH},
+	 *         {@link #BUMP}, {@link #SCREAM} and {@link #GLITTER}.
+	 */
+	public int getMask() {
+		return this.mask;
 	}
 
-	public boolean getGlitter() {
-		return this.fGlitter;
+	/**
+	 * @param time current time, to be added to percept.
+	 * @return the percept as shown to the user, e.g.
+	 *         {@code percept([breeze,no stench,no bump,no scream,no glitter],3)}.
+	 */
+	public String toString(final int time) {
+		return "percept([" + (getBreeze() ? "breeze" : "no breeze") + "," + (getStench() ? "stench" : "no stench") + ","
+				+ (getBump() ? "bump" : "no bump") + "," + (getScream() ? "scream" : "no scream") + ","
+				+ (getGlitter() ? "glitter" : "no glitter") + "]," + time + ")";
 	}
 
+	/**
+	 * Same as {@link #toString(int)} at time 0.
+	 */
 	@Override
 	public String toString() {
-		return "percept([" + (getBreeze() ? "breeze" : "no breeze") + "," + (getStench() ? "stench" : "no stench") + ","
-				+ (getBump() ? "bump" : "no bump") + "," + (getScream() ? "scream" : "no scream") + ","
-				+ (getGlitter() ? "glitter" : "no glitter") + "]," + this.time + ")";
+		return toString(0);
 	}
-}
\ No newline at end of file
+}
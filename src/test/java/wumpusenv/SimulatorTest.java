@@ -0,0 +1,45 @@
+package wumpusenv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SimulatorTest {
+	/**
+	 * A game that is reset automatically must go on like a freshly loaded game,
+	 * and not with the percept and reward of the game that just ended.
+	 */
+	@Test
+	public void autoResetStartsLikeAFreshGame() {
+		final Simulator simulator = simulator(pitWorld());
+		assertTrue(simulator.nextStep(TheGame.FORWARD));
+		assertTrue(simulator.episodeEnded());
+
+		final Simulator fresh = simulator(pitWorld());
+		assertEquals(fresh.getCurrentPercept(), simulator.getCurrentPercept());
+		simulator.nextStep(TheGame.TURN_LEFT);
+		fresh.nextStep(TheGame.TURN_LEFT);
+		assertEquals(fresh.getCurrentPercept(), simulator.getCurrentPercept());
+		assertEquals(fresh.getReward(), simulator.getReward());
+		assertEquals(fresh.getGameScore(), simulator.getGameScore());
+	}
+
+	/**
+	 * @return a world where the agent, at the start, faces a pit that has a
+	 *         breeze because of a second pit behind it.
+	 */
+	private static WorldModel pitWorld() {
+		final WorldModel world = new WorldModel();
+		world.addItem(1, 0, WorldModel.PIT);
+		world.addItem(2, 0, WorldModel.PIT);
+		return world;
+	}
+
+	private static Simulator simulator(final WorldModel world) {
+		final Simulator simulator = new Simulator(null);
+		simulator.setAutoReset(true);
+		simulator.setModel(world);
+		return simulator;
+	}
+}
@@ -0,0 +1,53 @@
+package wumpusenv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link TheGame#Action(int, WorldModel)} does not allocate once a
+ * world is warmed up, for every {@link WorldModel.Storage}. The first SHOOT in
+ * a world builds its arrow index, so every world first plays one round that is
+ * not measured.
+ */
+public class TheGameAllocationTest {
+	private static final int STEPS = 200000;
+	private static final int[] ACTIONS = { TheGame.FORWARD, TheGame.FORWARD, TheGame.FORWARD, TheGame.TURN_LEFT,
+			TheGame.TURN_RIGHT, TheGame.GRAB, TheGame.SHOOT };
+
+	@Test
+	public void actionsDoNotAllocate() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		final long thread = Thread.currentThread().getId();
+
+		final Random random = new Random(1);
+		final int[] actions = new int[STEPS];
+		for (int i = 0; i < STEPS; i++) {
+			actions[i] = ACTIONS[random.nextInt(ACTIONS.length)];
+		}
+		for (final WorldModel.Storage storage : WorldModel.Storage.values()) {
+			// no pits and no wumpus, so the agent lives through all the steps
+			final WorldModel world = new WorldGenerator(16, 16, 0, 0.1, 0, storage).generate(3);
+			final TheGame game = new TheGame();
+			play(actions, game, world);
+			final long before = threads.getThreadAllocatedBytes(thread);
+			play(actions, game, world);
+			final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			assertEquals(storage + " allocated", 0, allocated);
+		}
+	}
+
+	private static void play(final int[] actions, final TheGame game, final WorldModel world) {
+		for (final int action : actions) {
+			game.Action(action, world);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package wumpusenv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+
+import org.junit.Test;
+
+public class WorldGeneratorTest {
+	/**
+	 * The world is the cave and its ring of walls, and nothing else, also when
+	 * the cave is too small to hold the gold square of a new WorldModel.
+	 */
+	@Test
+	public void boundsAreTheWalls() {
+		final int[][] sizes = { { 1, 1 }, { 1, 4 }, { 3, 1 }, { 2, 2 }, { 5, 3 } };
+		for (final WorldModel.Storage storage : WorldModel.Storage.values()) {
+			for (final int[] size : sizes) {
+				final WorldModel world = new WorldGenerator(size[0], size[1], 0.2, 0.2, 1, storage).generate(7);
+				assertEquals(storage + " " + size[0] + "x" + size[1], new Rectangle(-1, -1, size[0] + 2, size[1] + 2),
+						world.getBounds());
+			}
+		}
+	}
+}